@@ -7,21 +7,38 @@ import com.akselglyholt.velocityLimboHandler.commands.ConsentCommand;
 import com.akselglyholt.velocityLimboHandler.consent.ConsentManager;
 import com.akselglyholt.velocityLimboHandler.group.ChannelGroup;
 import com.akselglyholt.velocityLimboHandler.group.ChannelGroupRegistry;
+import com.akselglyholt.velocityLimboHandler.health.BackendHealthMonitor;
+import com.akselglyholt.velocityLimboHandler.health.BackendStatus;
+import com.akselglyholt.velocityLimboHandler.health.SlowStartController;
 import com.akselglyholt.velocityLimboHandler.listeners.CommandExecuteEventListener;
 import com.akselglyholt.velocityLimboHandler.listeners.ConsentChatListener;
 import com.akselglyholt.velocityLimboHandler.listeners.ConnectionListener;
 import com.akselglyholt.velocityLimboHandler.misc.InMemoryReconnectBlocker;
 import com.akselglyholt.velocityLimboHandler.misc.MessageFormatter;
+import com.akselglyholt.velocityLimboHandler.misc.MaintenanceAdapter;
 import com.akselglyholt.velocityLimboHandler.misc.ReconnectBlocker;
 import com.akselglyholt.velocityLimboHandler.misc.Utility;
-import com.akselglyholt.velocityLimboHandler.storage.ChannelStore;
+import com.akselglyholt.velocityLimboHandler.storage.AsyncChannelStore;
+import com.akselglyholt.velocityLimboHandler.storage.CachingChannelStore;
+import com.akselglyholt.velocityLimboHandler.storage.CachingConsentStore;
+import com.akselglyholt.velocityLimboHandler.storage.ChannelCountMode;
+import com.akselglyholt.velocityLimboHandler.storage.ChannelDeparture;
+import com.akselglyholt.velocityLimboHandler.storage.ClusteredConsentStore;
 import com.akselglyholt.velocityLimboHandler.storage.ConsentStore;
 import com.akselglyholt.velocityLimboHandler.storage.InMemoryChannelStore;
 import com.akselglyholt.velocityLimboHandler.storage.InMemoryConsentStore;
 import com.akselglyholt.velocityLimboHandler.storage.LocalSqliteConsentStore;
 import com.akselglyholt.velocityLimboHandler.storage.PlayerManager;
+import com.akselglyholt.velocityLimboHandler.storage.RedisConfig;
+import com.akselglyholt.velocityLimboHandler.storage.RespConsentMessenger;
+import com.akselglyholt.velocityLimboHandler.storage.SlotReservation;
+import com.akselglyholt.velocityLimboHandler.storage.StandaloneRedisStore;
 import com.akselglyholt.velocityLimboHandler.storage.ValioBungeeChannelStore;
+import com.akselglyholt.velocityLimboHandler.storage.ValioBungeeConsentMessenger;
+import com.akselglyholt.velocityLimboHandler.storage.ValioBungeeDataStore;
+import com.akselglyholt.velocityLimboHandler.storage.WriteBehindConsentStore;
 import com.google.inject.Inject;
+import com.imaginarycode.minecraft.redisbungee.AbstractRedisBungeeAPI;
 import com.velocitypowered.api.event.EventManager;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.proxy.ProxyInitializeEvent;
@@ -33,7 +50,6 @@ import com.velocitypowered.api.proxy.ConnectionRequestBuilder;
 import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.ProxyServer;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
-import com.velocitypowered.api.proxy.server.ServerPing;
 import dev.dejvokep.boostedyaml.YamlDocument;
 import dev.dejvokep.boostedyaml.dvs.versioning.BasicVersioning;
 import dev.dejvokep.boostedyaml.route.Route;
@@ -49,13 +65,26 @@ import org.bstats.velocity.Metrics;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Logger;
 
 @Plugin(id = "velocity-limbo-handler", name = "VelocityLimboHandler", authors = "Aksel Glyholt", version = VersionInfo.VERSION)
@@ -71,20 +100,32 @@ public class VelocityLimboHandler {
     private static ReconnectBlocker reconnectBlocker;
     private static AuthManager authManager;
     private static ConsentStore consentStore;
-    private static ChannelStore channelStore;
+    private static AsyncChannelStore channelStore;
+    // Shared when both the channel and the consent storage use the standalone Redis
+    private static StandaloneRedisStore standaloneRedisStore;
     private static ChannelGroupRegistry channelGroupRegistry;
     private static ConsentManager consentManager;
+    private static BackendHealthMonitor healthMonitor;
+    private static SlowStartController slowStartController;
 
     private static YamlDocument config;
     private static YamlDocument messageConfig;
     private static boolean queueEnabled;
+    private static boolean eventDrainEnabled;
+    private static boolean batchAdmissionEnabled;
+    private static int batchAdmissionLimit;
+    private static boolean parallelProbing;
+    private static long probeDeadlineMillis;
+    private static long slotReservationTtlMillis;
     private static String defaultGroupName;
     private static Path dataDirectoryPath;
 
     private static final MiniMessage miniMessage = MiniMessage.miniMessage();
+    private static final Set<String> pendingDrains = ConcurrentHashMap.newKeySet();
 
     private static boolean maintenancePluginPresent = false;
     private static Object maintenanceAPI = null;
+    private static MaintenanceAdapter maintenanceAdapter = null;
 
     private final Metrics.Factory metricsFactory;
 
@@ -125,7 +166,7 @@ public class VelocityLimboHandler {
         commandBlocker = new CommandBlocker();
         metricsFactory = metricsFactoryInstance;
 
-        reconnectBlocker = new InMemoryReconnectBlocker();
+        reconnectBlocker = new InMemoryReconnectBlocker(VelocityLimboHandler::onPlayerUnblocked);
         consentStore = createConsentStore();
         channelStore = createChannelStore();
         channelGroupRegistry = ChannelGroupRegistry.fromConfig(config, logger);
@@ -152,8 +193,38 @@ public class VelocityLimboHandler {
 
     @Subscribe
     public void onProxyShutdown(ProxyShutdownEvent event) {
-        if (channelStore == null || channelGroupRegistry == null) return;
+        if (channelStore != null && channelGroupRegistry != null) {
+            flushShutdownDepartures();
+        }
+
+        // Lets the stores finish writes that are still queued
+        if (channelStore != null) channelStore.close();
+        if (consentStore != null) consentStore.close();
+    }
+
+    /**
+     * Write every player's departure as one batch, giving up after the shutdown deadline
+     * so a slow store can't hold the proxy past its kill timeout
+     */
+    private static void flushShutdownDepartures() {
+        List<ChannelDeparture> departures = collectShutdownDepartures();
+        if (departures.isEmpty()) return;
 
+        long deadline = Math.max(100, config.getLong("channel-storage.shutdown-deadline", 5000L));
+        try {
+            CompletableFuture.runAsync(() -> channelStore.recordShutdown(departures))
+                    .get(deadline, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            logger.warning("Channel state of " + departures.size() + " players wasn't written within " + deadline + "ms, giving up.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            logger.warning("Failed to write channel state on shutdown: " + e.getCause().getMessage());
+        }
+    }
+
+    private static List<ChannelDeparture> collectShutdownDepartures() {
+        List<ChannelDeparture> departures = new ArrayList<>();
         for (Player player : proxyServer.getAllPlayers()) {
             RegisteredServer currentServer = player.getCurrentServer()
                     .map(sc -> sc.getServer())
@@ -167,18 +238,22 @@ public class VelocityLimboHandler {
                 sourceServer = playerManager.getPreviousServer(player);
             }
 
+            String fromServer = null;
+            String lastGroup = null;
             if (sourceServer != null) {
                 ChannelGroup group = channelGroupRegistry.getGroupForServer(sourceServer.getServerInfo().getName());
                 if (group != null) {
                     if (!inLimbo && currentServer != null) {
-                        channelStore.decrementChannelCount(sourceServer.getServerInfo().getName());
+                        fromServer = sourceServer.getServerInfo().getName();
                     }
-                    channelStore.setLastGroup(player.getUniqueId(), group.getName());
+                    lastGroup = group.getName();
                 }
             }
-            channelStore.clearCurrentChannel(player.getUniqueId());
+            departures.add(new ChannelDeparture(player.getUniqueId(), fromServer, lastGroup));
         }
+        return departures;
     }
+
     private void initializeMaintenanceIntegration() {
         Optional<PluginContainer> maintenancePlugin = proxyServer.getPluginManager().getPlugin("maintenance");
         if (maintenancePlugin.isPresent()) {
@@ -188,6 +263,7 @@ public class VelocityLimboHandler {
 
                 // Call MaintenanceProvider.get() - this directly returns the API instance
                 maintenanceAPI = providerClass.getMethod("get").invoke(null);
+                maintenanceAdapter = MaintenanceAdapter.create(maintenanceAPI, logger);
 
                 maintenancePluginPresent = true;
                 logger.info("Maintenance plugin detected and integrated successfully.");
@@ -196,6 +272,7 @@ public class VelocityLimboHandler {
                 logger.warning("Failed to integrate with Maintenance plugin: " + e.getMessage());
                 maintenancePluginPresent = false;
                 maintenanceAPI = null;
+                maintenanceAdapter = null;
             }
         } else {
             logger.info("Maintenance plugin not detected - maintenance checks disabled.");
@@ -211,6 +288,10 @@ public class VelocityLimboHandler {
         return maintenanceAPI;
     }
 
+    public static MaintenanceAdapter getMaintenanceAdapter() {
+        return maintenanceAdapter;
+    }
+
     public static RegisteredServer getLimboServer() {
         return limboServer;
     }
@@ -243,7 +324,7 @@ public class VelocityLimboHandler {
         return consentStore;
     }
 
-    public static ChannelStore getChannelStore() {
+    public static AsyncChannelStore getChannelStore() {
         return channelStore;
     }
 
@@ -255,6 +336,10 @@ public class VelocityLimboHandler {
         return consentManager;
     }
 
+    public static BackendHealthMonitor getHealthMonitor() {
+        return healthMonitor;
+    }
+
     public static String getDefaultGroupName() {
         return defaultGroupName;
     }
@@ -263,6 +348,15 @@ public class VelocityLimboHandler {
         return dataDirectoryPath;
     }
 
+    /**
+     * @return the plugin's executor, for blocking storage lookups that shouldn't run on the event threads
+     */
+    public static Executor getAsyncExecutor() {
+        return proxyServer.getPluginManager().getPlugin("velocity-limbo-handler")
+                .<Executor>map(PluginContainer::getExecutorService)
+                .orElse(ForkJoinPool.commonPool());
+    }
+
     @Subscribe
     public void onInitialize(ProxyInitializeEvent event) {
         logger.info("Loading Limbo Handler!");
@@ -291,6 +385,45 @@ public class VelocityLimboHandler {
             return;
         }
 
+        long healthCheckInterval = Math.max(100, config.getLong("health-check.interval", 1000L));
+        long healthCheckTtl = Math.max(healthCheckInterval, config.getLong("health-check.ttl", 3000L));
+        healthMonitor = new BackendHealthMonitor(proxyServer, logger, healthCheckTtl,
+                config.getInt("circuit-breaker.failure-threshold", 3),
+                config.getLong("circuit-breaker.base-backoff", 5000L),
+                config.getLong("circuit-breaker.max-backoff", 300000L));
+        if (config.getBoolean("slow-start.enabled", false)) {
+            slowStartController = new SlowStartController(healthMonitor,
+                    config.getLong("slow-start.window", 60000L),
+                    config.getDouble("slow-start.floor", 0.1),
+                    config.getDouble("slow-start.rtt-pause-factor", 3.0),
+                    config.getInt(Route.from("task-interval")));
+            // Registered before the drain listener so the ramp is in place when the queue starts moving
+            healthMonitor.addRecoveryListener(slowStartController::begin);
+        }
+        healthMonitor.addRecoveryListener(VelocityLimboHandler::signalDrain);
+        healthMonitor.start(this, healthCheckInterval);
+
+        if (maintenanceAdapter != null) {
+            Runnable refreshMaintenance = () -> maintenanceAdapter.refresh(proxyServer.getAllServers().stream()
+                    .map(server -> server.getServerInfo().getName())
+                    .toList());
+            // Bypass eligibility is cached in the queues, so recompute it when the whitelist changes
+            maintenanceAdapter.addChangeListener(playerManager::refreshMaintenanceBypass);
+            refreshMaintenance.run();
+            proxyServer.getScheduler().buildTask(this, refreshMaintenance)
+                    .repeat(Math.max(100, config.getLong("maintenance-refresh-interval", 2000L)), TimeUnit.MILLISECONDS)
+                    .schedule();
+        }
+
+        if (channelStore instanceof CachingChannelStore cachingStore && channelGroupRegistry != null) {
+            List<String> groupServers = new ArrayList<>();
+            for (ChannelGroup group : channelGroupRegistry.getGroups().values()) {
+                groupServers.addAll(group.getServers());
+            }
+            cachingStore.start(proxyServer, this, groupServers,
+                    Math.max(100, config.getLong("channel-storage.cache.refresh-interval", 1000L)));
+        }
+
         eventManger.register(this, new ConnectionListener());
         eventManger.register(this, new CommandExecuteEventListener(commandBlocker));
         if (consentManager != null) {
@@ -304,6 +437,12 @@ public class VelocityLimboHandler {
         int queueInterval = config.getInt(Route.from("queue-notify-interval"));
         queueEnabled = config.getBoolean(Route.from("queue-enabled"), true);
         getLogger().info("Queue Enabled: " + queueEnabled);
+        eventDrainEnabled = config.getBoolean("queue-event-drain", true);
+        batchAdmissionEnabled = config.getBoolean("queue-batch.enabled", false);
+        batchAdmissionLimit = Math.max(1, config.getInt("queue-batch.max-per-tick", 10));
+        parallelProbing = config.getBoolean("reconnect-probe.parallel", false);
+        probeDeadlineMillis = Math.max(100, config.getLong("reconnect-probe.deadline", 2000L));
+        slotReservationTtlMillis = Math.max(1000, config.getLong("channel-storage.reservation-ttl", 10000L));
 
         // Disabled commands
         List<String> disabledCommands = config.getStringList("disabled-commands");
@@ -323,22 +462,7 @@ public class VelocityLimboHandler {
             // Loop through all servers, if queue is enabled
             if (queueEnabled) {
                 for (RegisteredServer server : proxyServer.getAllServers()) {
-                    // Queue mode – get the next player from the queue
-                    if (!playerManager.hasQueuedPlayers(server)) continue;
-
-                    // Check if the server is in Maintenance mode
-                    if (Utility.isServerInMaintenance(server.getServerInfo().getName())) {
-                        // Is in Maintenance mode, so find first player in queue that can join
-                        Player whitelistedPlayer = PlayerManager.findFirstMaintenanceAllowedPlayer(server);
-
-                        if (whitelistedPlayer != null && whitelistedPlayer.isActive()) {
-                            reconnectPlayer(whitelistedPlayer);
-                        }
-                    } else {
-                        // Is not in Maintenance mode, so carry on with normal queue.
-                        Player nextPlayer = playerManager.getNextQueuedPlayer(server);
-                        reconnectPlayer(nextPlayer);
-                    }
+                    processQueue(server);
                 }
             } else {
                 for (Player player : connectedPlayers) {
@@ -348,10 +472,7 @@ public class VelocityLimboHandler {
 
                         if (Utility.isServerInMaintenance(previousServer.getServerInfo().getName())) {
                             // Check if the player has whitelist or another bypass to join, or continue to next player
-                            if (player.hasPermission("maintenance.admin")
-                                    || player.hasPermission("maintenance.bypass")
-                                    || player.hasPermission("maintenance.singleserver.bypass." + previousServer.getServerInfo().getName())
-                                    || Utility.playerMaintenanceWhitelisted(player)
+                            if (Utility.canBypassMaintenance(player, previousServer.getServerInfo().getName())
                                     || authManager.isAuthBlocked(player)) {
                                 // Can't join server whilst in Maintenance, or player is Auth Blocked so continue to next
                                 continue;
@@ -368,6 +489,9 @@ public class VelocityLimboHandler {
 
         // Schedule queue position notifier
         proxyServer.getScheduler().buildTask(this, () -> {
+            // Snapshot queue positions once per cycle instead of looking them up per player
+            Map<UUID, Integer> queuePositions = queueEnabled ? playerManager.snapshotQueuePositions() : Map.of();
+
             for (Player player : limboServer.getPlayersConnected()) {
                 if (consentManager != null && consentManager.isConsentRequired(player)) {
                     consentManager.sendPrompt(player);
@@ -401,9 +525,9 @@ public class VelocityLimboHandler {
                 // Only show queue position if queue is enabled
                 if (!queueEnabled) continue;
 
-                int position = playerManager.getQueuePosition(player);
-                if (position == -1) continue;
-                String formatedQueuePositionMsg = MessageFormatter.formatMessage(queuePositionMsg, player);
+                Integer position = queuePositions.get(player.getUniqueId());
+                if (position == null) continue;
+                String formatedQueuePositionMsg = MessageFormatter.formatMessage(queuePositionMsg, position);
 
                 player.sendMessage(miniMessage.deserialize(formatedQueuePositionMsg));
             }
@@ -414,42 +538,217 @@ public class VelocityLimboHandler {
         return queueEnabled;
     }
 
-    private static void reconnectPlayer(Player player) {
-        if (player == null || !player.isActive()) return;
-        if (authManager.isAuthBlocked(player)) return;
-        if (consentManager != null && consentManager.isConsentRequired(player)) return;
-        if (playerManager.isPlayerConnecting(player)) return;
+    /**
+     * Move the queue of a single server along
+     * @param server The server whose queue should be processed
+     */
+    private static void processQueue(RegisteredServer server) {
+        // Queue mode – get the next player from the queue
+        if (!playerManager.hasQueuedPlayers(server)) return;
 
-        RegisteredServer previousServer = playerManager.getPreviousServer(player);
-        if (previousServer == null) return;
+        // Leave servers with an open circuit alone until their backoff has passed
+        if (!healthMonitor.allowsTraffic(server.getServerInfo().getName())) return;
+
+        // Past the backoff only one player goes, the rest wait until it shows whether the server is back
+        if (healthMonitor.needsProbe(server.getServerInfo().getName())) {
+            admitProbe(server);
+            return;
+        }
+
+        // Check if the server is in Maintenance mode
+        if (Utility.isServerInMaintenance(server.getServerInfo().getName())) {
+            if (batchAdmissionEnabled) {
+                // Only the players that may bypass maintenance are considered
+                admitQueuedBatch(server, true);
+                return;
+            }
 
-        List<RegisteredServer> candidates = resolveCandidateServers(player, previousServer);
-        if (candidates.isEmpty()) return;
+            // Is in Maintenance mode, so find first player in queue that can join
+            Player whitelistedPlayer = PlayerManager.findFirstMaintenanceAllowedPlayer(server);
 
-        // If enabled, check if a server responds to pings before connecting, asynchronously
-        attemptReconnect(player, candidates, 0);
+            if (whitelistedPlayer != null && whitelistedPlayer.isActive()) {
+                reconnectPlayer(whitelistedPlayer);
+            }
+        } else if (batchAdmissionEnabled) {
+            // Admit as many players as the server has room for
+            admitQueuedBatch(server, false);
+        } else {
+            // Hold back while a freshly recovered server is still warming up
+            String serverName = server.getServerInfo().getName();
+            if (slowStartController != null && slowStartController.acquire(serverName, 1, 1) == 0) return;
+
+            // Is not in Maintenance mode, so carry on with normal queue.
+            Player nextPlayer = playerManager.getNextQueuedPlayer(server);
+            if (!reconnectPlayer(nextPlayer) && slowStartController != null) {
+                // Nobody was sent, so the permit is still free
+                slowStartController.release(serverName, 1);
+            }
+        }
     }
 
-    private static List<RegisteredServer> resolveCandidateServers(Player player, RegisteredServer previousServer) {
-        if (channelGroupRegistry == null) {
-            return List.of(previousServer);
+    /**
+     * Send the first player that may join a half-open server, their connect decides whether the circuit closes
+     * @param server The server to probe
+     */
+    private static void admitProbe(RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        if (!healthMonitor.tryAcquireProbe(serverName)) return;
+
+        Player probe = Utility.isServerInMaintenance(serverName)
+                ? PlayerManager.findFirstMaintenanceAllowedPlayer(server)
+                : playerManager.getNextQueuedPlayer(server);
+        if (probe == null || !probe.isActive() || !reconnectPlayer(probe)) {
+            healthMonitor.releaseProbe(serverName);
         }
+    }
+
+    /**
+     * Signal that a server's queue may be able to move, e.g. because a slot was freed.
+     * Drains are run right away on the scheduler, and repeated signals for the same server coalesce.
+     * @param server The server whose queue should be drained
+     */
+    public static void signalDrain(RegisteredServer server) {
+        if (!eventDrainEnabled || !queueEnabled || server == null || limboServer == null) return;
+        if (Utility.doServerNamesMatch(server, limboServer)) return;
+
+        String serverName = server.getServerInfo().getName();
+        if (!pendingDrains.add(serverName)) return;
+
+        proxyServer.getScheduler().buildTask(instance, () -> {
+            pendingDrains.remove(serverName);
+            processQueue(server);
+        }).schedule();
+    }
+
+    private static void onPlayerUnblocked(UUID playerId) {
+        proxyServer.getPlayer(playerId)
+                .filter(playerManager::isPlayerRegistered)
+                .ifPresent(player -> signalDrain(playerManager.getPreviousServer(player)));
+    }
+
+    /**
+     * Try to move a player out of Limbo
+     * @param player The player to reconnect
+     * @return true if a reconnect attempt was started, false if the player was skipped
+     */
+    private static boolean reconnectPlayer(Player player) {
+        if (player == null || !player.isActive()) return false;
+        if (authManager.isAuthBlocked(player)) return false;
+        if (consentManager != null && consentManager.isConsentRequired(player)) return false;
+        if (playerManager.isPlayerConnecting(player)) return false;
+
+        RegisteredServer previousServer = playerManager.getPreviousServer(player);
+        if (previousServer == null) return false;
+
+        // The candidates are looked up on the store's threads, not on whichever thread called in
+        resolveCandidateServers(player, previousServer).whenComplete((candidates, throwable) -> {
+            if (throwable != null) {
+                logger.warning("Failed to resolve servers for " + player.getUsername() + ": " + throwable.getMessage());
+                return;
+            }
+            if (candidates.isEmpty()) return;
+
+            // If enabled, check if a server responds to pings before connecting, asynchronously
+            if (parallelProbing && candidates.size() > 1) {
+                probeCandidatesInParallel(player, candidates);
+            } else {
+                attemptReconnect(player, candidates, 0);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * Dispatch up to the free capacity of a server from the head of its queue in one tick
+     * @param server The server whose queue should be drained
+     * @param maintenance Whether to only admit the players that may bypass maintenance
+     */
+    private static void admitQueuedBatch(RegisteredServer server, boolean maintenance) {
+        String serverName = server.getServerInfo().getName();
+        ChannelGroup group = channelGroupRegistry == null || channelStore == null
+                ? null
+                : channelGroupRegistry.getGroupForServer(serverName);
+        boolean groupLimited = group != null && group.getMaxPlayers() > 0;
+
+        // The group count is read alongside the ping, never from inside its callback
+        CompletableFuture<Map<String, Integer>> counts = groupLimited
+                ? channelStore.getChannelCountsAsync(List.of(serverName))
+                : CompletableFuture.completedFuture(Map.of());
+
+        healthMonitor.getStatus(server).thenCombine(counts, (status, groupCounts) -> {
+            if (status == null || !status.isOnline()) return null;
+
+            int slots = Math.min(status.getFreeSlots(), batchAdmissionLimit);
+            if (groupLimited) {
+                slots = Math.min(slots, group.getMaxPlayers() - groupCounts.getOrDefault(serverName, 0));
+            }
 
-        String excludedServer = channelStore == null ? null : channelStore.getCurrentChannel(player.getUniqueId());
-        ChannelGroup group = channelGroupRegistry.getGroupForServer(previousServer.getServerInfo().getName());
-        if (group == null && channelStore != null) {
-            String lastGroup = channelStore.getLastGroup(player.getUniqueId());
-            if (lastGroup == null) {
-                lastGroup = defaultGroupName;
+            if (slowStartController != null && slots > 0) {
+                slots = slowStartController.acquire(serverName, batchAdmissionLimit, slots);
             }
-            group = lastGroup == null ? null : channelGroupRegistry.getGroup(lastGroup);
+
+            if (slots <= 0) return null;
+
+            List<Player> queued = maintenance
+                    ? playerManager.getMaintenanceAllowedPlayers(server)
+                    : playerManager.getQueueSnapshot(server);
+
+            int dispatched = 0;
+            for (Player player : queued) {
+                if (dispatched >= slots) break;
+                if (reconnectPlayer(player)) dispatched++;
+            }
+            if (slowStartController != null) {
+                slowStartController.release(serverName, slots - dispatched);
+            }
+            return null;
+        }).exceptionally(throwable -> {
+            logger.warning("Failed to admit the queue of " + serverName + ": " + throwable.getMessage());
+            return null;
+        });
+    }
+
+    /**
+     * Work out where a player may be sent, least populated first
+     * @param player The player to reconnect
+     * @param previousServer The server the player is waiting for
+     * @return completes with the candidate servers, read from the store without blocking the caller
+     */
+    private static CompletableFuture<List<RegisteredServer>> resolveCandidateServers(Player player, RegisteredServer previousServer) {
+        if (channelGroupRegistry == null) {
+            return CompletableFuture.completedFuture(List.of(previousServer));
         }
 
-        if (group == null) {
-            return List.of(previousServer);
+        ChannelGroup previousGroup = channelGroupRegistry.getGroupForServer(previousServer.getServerInfo().getName());
+        if (channelStore == null) {
+            return CompletableFuture.completedFuture(previousGroup == null
+                    ? List.of(previousServer)
+                    : candidatesOf(previousGroup, null, previousServer));
         }
 
-        List<RegisteredServer> servers = new java.util.ArrayList<>();
+        CompletableFuture<String> currentChannelLookup = channelStore.getCurrentChannelAsync(player.getUniqueId());
+        CompletableFuture<ChannelGroup> groupLookup = previousGroup != null
+                ? CompletableFuture.completedFuture(previousGroup)
+                : channelStore.getLastGroupAsync(player.getUniqueId()).thenApply(lastGroup -> {
+                    String groupName = lastGroup != null ? lastGroup : defaultGroupName;
+                    return groupName == null ? null : channelGroupRegistry.getGroup(groupName);
+                });
+
+        return groupLookup.thenCombine(currentChannelLookup, (group, excludedServer) -> {
+            if (group == null) return CompletableFuture.completedFuture(List.of(previousServer));
+
+            List<RegisteredServer> servers = candidatesOf(group, excludedServer, previousServer);
+            // One batched read, so the comparator doesn't hit the store on every comparison
+            return channelStore.getChannelCountsAsync(group.getServers()).thenApply(counts -> {
+                List<RegisteredServer> sorted = new ArrayList<>(servers);
+                sorted.sort(java.util.Comparator.comparingInt(s -> counts.getOrDefault(s.getServerInfo().getName(), 0)));
+                return sorted;
+            });
+        }).thenCompose(sorted -> sorted);
+    }
+
+    private static List<RegisteredServer> candidatesOf(ChannelGroup group, String excludedServer, RegisteredServer previousServer) {
+        List<RegisteredServer> servers = new ArrayList<>();
         for (String serverName : group.getServers()) {
             if (serverName == null) continue;
             if (excludedServer != null && group.getServers().size() > 1 && serverName.equalsIgnoreCase(excludedServer)) {
@@ -458,15 +757,7 @@ public class VelocityLimboHandler {
             proxyServer.getServer(serverName).ifPresent(servers::add);
         }
 
-        if (servers.isEmpty()) {
-            return List.of(previousServer);
-        }
-
-        if (channelStore != null) {
-            servers.sort(java.util.Comparator.comparingInt(s -> channelStore.getChannelCount(s.getServerInfo().getName())));
-        }
-
-        return servers;
+        return servers.isEmpty() ? List.of(previousServer) : servers;
     }
 
     private static void attemptReconnect(Player player, List<RegisteredServer> candidates, int index) {
@@ -475,109 +766,242 @@ public class VelocityLimboHandler {
 
         RegisteredServer targetServer = candidates.get(index);
 
-        targetServer.ping().whenComplete((ping, throwable) -> {
-            if (throwable != null || ping == null) {
-                attemptReconnect(player, candidates, index + 1);
-                return; // Server offline
-            }
-
-            // Check if the server is full
-            if (ping.getPlayers().isEmpty()) {
+        // Read the shared health cache, only pinging when the cached result has expired
+        healthMonitor.getStatus(targetServer).whenComplete((status, throwable) -> {
+            if (throwable != null || !canJoin(player, targetServer, status)) {
                 attemptReconnect(player, candidates, index + 1);
                 return;
             }
 
-            ServerPing.Players serverPlayers = ping.getPlayers().get();
-            int maxPlayers = serverPlayers.getMax();
-            int onlinePlayers = serverPlayers.getOnline();
+            // Another proxy may have taken the last slot of the group since the counts were read
+            connectPlayer(player, targetServer).thenAccept(connected -> {
+                if (!connected) attemptReconnect(player, candidates, index + 1);
+            });
+        });
+    }
+
+    /**
+     * Probe every candidate at once and connect to the best one that answered before the deadline.
+     * The worst case is one probe timeout instead of one per candidate.
+     * @param player The player to reconnect
+     * @param candidates The servers the player may be sent to
+     */
+    private static void probeCandidatesInParallel(Player player, List<RegisteredServer> candidates) {
+        List<CompletableFuture<BackendStatus>> probes = new ArrayList<>(candidates.size());
+        for (RegisteredServer candidate : candidates) {
+            probes.add(healthMonitor.getStatus(candidate));
+        }
 
-            if (maxPlayers <= onlinePlayers) {
-                attemptReconnect(player, candidates, index + 1);
-                return;
-            }
+        CompletableFuture.allOf(probes.toArray(new CompletableFuture[0]))
+                .completeOnTimeout(null, probeDeadlineMillis, TimeUnit.MILLISECONDS)
+                .whenComplete((ignored, throwable) -> {
+                    if (!player.isActive()) return;
+
+                    List<Integer> ranked = new ArrayList<>();
+                    for (int i = 0; i < candidates.size(); i++) {
+                        BackendStatus status = probes.get(i).getNow(null);
+                        if (status == null || !status.isOnline() || !status.hasFreeSlot()) continue;
+                        if (!canJoin(player, candidates.get(i), status)) continue;
+                        ranked.add(i);
+                    }
+                    ranked.sort((a, b) -> compareLoad(probes.get(a).getNow(null), probes.get(b).getNow(null)));
 
-        if (channelGroupRegistry != null && channelStore != null) {
-            ChannelGroup group = channelGroupRegistry.getGroupForServer(targetServer.getServerInfo().getName());
-            if (group != null && group.getMaxPlayers() > 0) {
-                int currentCount = channelStore.getChannelCount(targetServer.getServerInfo().getName());
-                if (currentCount >= group.getMaxPlayers()) {
-                    attemptReconnect(player, candidates, index + 1);
-                    return;
-                }
+                    List<RegisteredServer> rankedServers = new ArrayList<>(ranked.size());
+                    for (int index : ranked) {
+                        rankedServers.add(candidates.get(index));
+                    }
+                    connectToFirstFree(player, rankedServers, 0);
+                });
+    }
+
+    // Fall back to the next best server if the group slot of the best was taken meanwhile
+    private static void connectToFirstFree(Player player, List<RegisteredServer> ranked, int index) {
+        if (index >= ranked.size()) return;
+        connectPlayer(player, ranked.get(index)).thenAccept(connected -> {
+            if (!connected) connectToFirstFree(player, ranked, index + 1);
+        });
+    }
+
+    // Least loaded first, lowest round trip time breaks ties
+    private static int compareLoad(BackendStatus a, BackendStatus b) {
+        double loadA = a.getMaxPlayers() > 0 ? (double) a.getOnlinePlayers() / a.getMaxPlayers() : 1.0;
+        double loadB = b.getMaxPlayers() > 0 ? (double) b.getOnlinePlayers() / b.getMaxPlayers() : 1.0;
+        int byLoad = Double.compare(loadA, loadB);
+        return byLoad != 0 ? byLoad : Long.compare(a.getRttMillis(), b.getRttMillis());
+    }
+
+    /**
+     * Check if a player may be sent to a server right now
+     * @param player The player to check
+     * @param targetServer The server they would be sent to
+     * @param status The current health of the server
+     * @return true if the server is up, has room and the player isn't held back by maintenance
+     */
+    private static boolean canJoin(Player player, RegisteredServer targetServer, BackendStatus status) {
+        // Server offline
+        if (status == null || !status.isOnline()) return false;
+
+        // Check if the server is full
+        if (!status.hasFreeSlot()) return false;
+
+        // The group limit is enforced when connecting, by reserving a slot
+
+        // Check if maintenance mode is enabled on Backend Server
+        if (Utility.isServerInMaintenance(targetServer.getServerInfo().getName())) {
+            // Check if the user has bypass permission for Maintenance or is admin
+            if (Utility.canBypassMaintenance(player, targetServer.getServerInfo().getName())) {
+                logger.info("[Maintenance Bypass] " + player.getUsername() + " bypassed queue to join " + targetServer.getServerInfo().getName());
+            } else {
+                return false;
             }
         }
 
-            // Check if maintenance mode is enabled on Backend Server
-            if (Utility.isServerInMaintenance(targetServer.getServerInfo().getName())) {
-                // Check if the user has bypass permission for Maintenance or is admin
-                if (player.hasPermission("maintenance.admin")
-                        || player.hasPermission("maintenance.bypass")
-                        || player.hasPermission("maintenance.singleserver.bypass." + targetServer.getServerInfo().getName())
-                        || Utility.playerMaintenanceWhitelisted(player)) {
-                    logger.info("[Maintenance Bypass] " + player.getUsername() + " bypassed queue to join " + targetServer.getServerInfo().getName());
-                } else {
-                    attemptReconnect(player, candidates, index + 1);
-                    return;
-                }
+        return true;
+    }
+
+    /**
+     * Reserve a slot in the server's group, then send the player there
+     * @param player The player to connect
+     * @param targetServer The server to send them to
+     * @return completes with false if the group has no free slot left, true otherwise
+     */
+    private static CompletableFuture<Boolean> connectPlayer(Player player, RegisteredServer targetServer) {
+        if (!playerManager.beginConnecting(player)) return CompletableFuture.completedFuture(true);
+
+        String serverName = targetServer.getServerInfo().getName();
+        return reserveGroupSlot(serverName)
+                .exceptionally(throwable -> {
+                    logger.warning("Failed to reserve a slot on " + serverName + ": " + throwable.getMessage());
+                    return null;
+                })
+                .thenApply(reservation -> {
+                    if (reservation == null) {
+                        playerManager.setPlayerConnecting(player, false);
+                        return false;
+                    }
+                    // Held until the post-connect path has written the player's count
+                    if (!reservation.isEmpty()) {
+                        playerManager.setReservation(player, new SlotReservation(serverName, reservation));
+                    }
+                    sendToServer(player, targetServer);
+                    return true;
+                });
+    }
+
+    private static void sendToServer(Player player, RegisteredServer targetServer) {
+        String serverName = targetServer.getServerInfo().getName();
+        healthMonitor.recordAdmissions(serverName, 1);
+
+        Utility.logInformational(String.format("Connecting %s to %s", player.getUsername(), serverName));
+
+        player.createConnectionRequest(targetServer).connect().whenComplete(((result, connectionThrowable) -> {
+            playerManager.setPlayerConnecting(player, false);
+            // Failed players will never be counted, joined ones give the slot back once they are
+            if (connectionThrowable != null || !result.isSuccessful()) releaseReservation(player);
+
+            // Only count failures of the backend, kicks like bans or whitelists are about the player
+            if (connectionThrowable == null && result.isSuccessful()) {
+                healthMonitor.recordSuccess(serverName);
+            } else if (isBackendFailure(result, connectionThrowable)) {
+                healthMonitor.recordFailure(serverName);
+            } else {
+                healthMonitor.releaseProbe(serverName);
             }
 
-            if (playerManager.isPlayerConnecting(player)) return;
+            if (result.isSuccessful()) {
+                Utility.logInformational(String.format("Successfully reconnected %s to %s", player.getUsername(), targetServer.getServerInfo().getName()));
+                playerManager.removePlayerIssue(player);
+                return;
+            }
 
-            playerManager.setPlayerConnecting(player, true);
+            if (result.getStatus() == ConnectionRequestBuilder.Status.CONNECTION_IN_PROGRESS) return;
 
-            Utility.logInformational(String.format("Connecting %s to %s", player.getUsername(), targetServer.getServerInfo().getName()));
+            Utility.logInformational(String.format("Connection failed for %s to %s. Result status: %s",
+                    player.getUsername(),
+                    targetServer.getServerInfo().getName(),
+                    result.getStatus()));
 
-            player.createConnectionRequest(targetServer).connect().whenComplete(((result, connectionThrowable) -> {
-                playerManager.setPlayerConnecting(player, false);
+            if (connectionThrowable != null) {
+                // Get the error message from throwable
+                String errorMessage = connectionThrowable.getMessage();
+                if (errorMessage == null) errorMessage = "";
 
-                if (result.isSuccessful()) {
-                    Utility.logInformational(String.format("Successfully reconnected %s to %s", player.getUsername(), targetServer.getServerInfo().getName()));
-                    playerManager.removePlayerIssue(player);
-                    return;
+                // Also check the result component if available
+                String reasonFromComponent = "";
+                if (result.getReasonComponent().isPresent()) {
+                    reasonFromComponent = PlainTextComponentSerializer.plainText().serialize(result.getReasonComponent().get());
                 }
 
-                if (result.getStatus() == ConnectionRequestBuilder.Status.CONNECTION_IN_PROGRESS) return;
+                // Check both the throwable message and the component reason
+                String combinedErrorMessage = (errorMessage + " " + reasonFromComponent).toLowerCase();
 
-                Utility.logInformational(String.format("Connection failed for %s to %s. Result status: %s",
-                        player.getUsername(),
-                        targetServer.getServerInfo().getName(),
-                        result.getStatus()));
+                // Notify user of their issue, and them to issue list
+                if (playerConnectIssue(player, combinedErrorMessage)) return;
 
-                if (connectionThrowable != null) {
-                    // Get the error message from throwable
-                    String errorMessage = connectionThrowable.getMessage();
-                    if (errorMessage == null) errorMessage = "";
-
-                    // Also check the result component if available
-                    String reasonFromComponent = "";
-                    if (result.getReasonComponent().isPresent()) {
-                        reasonFromComponent = PlainTextComponentSerializer.plainText().serialize(result.getReasonComponent().get());
-                    }
+                // Handle any other connection errors
+                player.sendMessage(miniMessage.deserialize("<red>❌ Failed to connect: " + (errorMessage.isEmpty() ? reasonFromComponent : errorMessage) + "</red>"));
+            } else {
+                // Handle case where we have a result but no throwable
+                Optional<Component> reasonComponent = result.getReasonComponent();
 
-                    // Check both the throwable message and the component reason
-                    String combinedErrorMessage = (errorMessage + " " + reasonFromComponent).toLowerCase();
+                if (reasonComponent.isPresent()) {
+                    String reason = PlainTextComponentSerializer.plainText().serialize(reasonComponent.get()).toLowerCase();
 
                     // Notify user of their issue, and them to issue list
-                    if (playerConnectIssue(player, combinedErrorMessage)) return;
+                    if (playerConnectIssue(player, reason)) return;
 
                     // Handle any other connection errors
-                    player.sendMessage(miniMessage.deserialize("<red>❌ Failed to connect: " + (errorMessage.isEmpty() ? reasonFromComponent : errorMessage) + "</red>"));
-                } else {
-                    // Handle case where we have a result but no throwable
-                    Optional<Component> reasonComponent = result.getReasonComponent();
+                    player.sendMessage(miniMessage.deserialize("<red>❌ Failed to connect: " + reason + "</red>"));
+                }
+            }
+        }));
+    }
 
-                    if (reasonComponent.isPresent()) {
-                        String reason = PlainTextComponentSerializer.plainText().serialize(reasonComponent.get()).toLowerCase();
+    /**
+     * Reserve a slot in the group of a server, checked against every proxy in one call to the store
+     * @param serverName The server the player is about to join
+     * @return completes with the reservation token, an empty string if the server has no group limit,
+     * or null if the group is full
+     */
+    private static CompletableFuture<String> reserveGroupSlot(String serverName) {
+        if (channelGroupRegistry == null || channelStore == null) return CompletableFuture.completedFuture("");
 
-                        // Notify user of their issue, and them to issue list
-                        if (playerConnectIssue(player, reason)) return;
+        ChannelGroup group = channelGroupRegistry.getGroupForServer(serverName);
+        if (group == null || group.getMaxPlayers() <= 0) return CompletableFuture.completedFuture("");
 
-                        // Handle any other connection errors
-                        player.sendMessage(miniMessage.deserialize("<red>❌ Failed to connect: " + reason + "</red>"));
-                    }
-                }
-            }));
-        });
+        return channelStore.tryReserveSlotAsync(serverName, group.getMaxPlayers(), slotReservationTtlMillis);
+    }
+
+    /**
+     * Give back the group slot held for a player, once their count was written or they won't join after all
+     * @param player The player whose slot should be released
+     * @return completes once the slot was released
+     */
+    public static CompletableFuture<Void> releaseReservation(Player player) {
+        SlotReservation reservation = playerManager.consumeReservation(player);
+        if (reservation == null || channelStore == null) return CompletableFuture.completedFuture(null);
+
+        return channelStore.releaseSlotAsync(reservation.getServerName(), reservation.getToken())
+                .exceptionally(throwable -> {
+                    // The reservation runs out on its own
+                    logger.warning("Failed to release the slot of " + player.getUsername() + ": " + throwable.getMessage());
+                    return null;
+                });
+    }
+
+    /**
+     * @param result The result of the connect, null if it threw
+     * @param throwable What the connect threw, or null
+     * @return true if the connect failed because of the backend, not because of the player or another plugin
+     */
+    private static boolean isBackendFailure(ConnectionRequestBuilder.Result result, Throwable throwable) {
+        if (throwable != null || result == null) return true;
+        if (result.getStatus() != ConnectionRequestBuilder.Status.SERVER_DISCONNECTED) return false;
+
+        String reason = result.getReasonComponent()
+                .map(component -> PlainTextComponentSerializer.plainText().serialize(component).toLowerCase())
+                .orElse("");
+        return !(reason.contains("ban") || reason.contains("whitelist") || reason.contains("full"));
     }
 
     private static boolean playerConnectIssue(Player player, String reason) {
@@ -624,37 +1048,171 @@ public class VelocityLimboHandler {
 
     private static void syncGroupData() {
         if (channelStore == null || channelGroupRegistry == null) return;
-        var groups = channelGroupRegistry.getGroups();
-        channelStore.storeGroups(groups.keySet());
-        for (var entry : groups.entrySet()) {
+        Map<String, List<String>> groupServers = new HashMap<>();
+        Map<String, Integer> groupMaxPlayers = new HashMap<>();
+        for (var entry : channelGroupRegistry.getGroups().entrySet()) {
             String groupName = entry.getKey();
             ChannelGroup group = entry.getValue();
-            channelStore.storeGroupServers(groupName, group.getServers());
-            channelStore.storeGroupMaxPlayers(groupName, group.getMaxPlayers());
+            groupServers.put(groupName, group.getServers());
+            groupMaxPlayers.put(groupName, group.getMaxPlayers());
         }
+        channelStore.storeGroupLayout(groupServers, groupMaxPlayers);
     }
 
     private static ConsentStore createConsentStore() {
+        ConsentStore backing = createBackingConsentStore();
+        ConsentStore store = backing;
+        if (config.getBoolean("consent-storage.write-behind.enabled", true)) {
+            int batchSize = config.getInt("consent-storage.write-behind.batch-size", 100);
+            long flushInterval = config.getLong("consent-storage.write-behind.flush-interval", 250L);
+            store = new WriteBehindConsentStore(store, logger, batchSize, flushInterval);
+        }
+        // The clustered store keeps a cache of its own, one that other proxies can invalidate
+        if (backing instanceof ClusteredConsentStore || !config.getBoolean("consent-storage.cache.enabled", true)) return store;
+
+        int negativeSize = config.getInt("consent-storage.cache.negative-size", 10000);
+        long negativeTtl = config.getLong("consent-storage.cache.negative-ttl", 60000L);
+        CachingConsentStore cache = new CachingConsentStore(store, negativeSize, negativeTtl);
+        if (backing instanceof LocalSqliteConsentStore local && config.getBoolean("consent-storage.cache.preload", true)) {
+            preloadConsent(local, cache);
+        }
+        return cache;
+    }
+
+    /**
+     * Load every consented player from the local file into the cache, so consent checks never read the file.
+     * This proxy is the file's only writer, so the cache stays complete from then on.
+     * @param source The local store to load from
+     * @param cache The cache to fill
+     */
+    private static void preloadConsent(LocalSqliteConsentStore source, CachingConsentStore cache) {
+        try {
+            long loaded = source.forEachConsented(10000, cache::loadConsented);
+            cache.markComplete();
+            logger.info("Loaded " + loaded + " consented players into memory.");
+        } catch (Exception e) {
+            // The cache still works without it, reading the file on a miss
+            logger.warning("Failed to preload consent, reading it on demand instead: " + e.getMessage());
+        }
+    }
+
+    private static ConsentStore createBackingConsentStore() {
         String storageType = config.getString("consent-storage.type", "local");
         if ("memory".equalsIgnoreCase(storageType)) {
             return new InMemoryConsentStore();
         }
 
+        if ("redis".equalsIgnoreCase(storageType)) {
+            try {
+                return getStandaloneRedisStore();
+            } catch (Exception e) {
+                logger.warning("Failed to connect to Redis, falling back to in-memory consent store: " + e.getMessage());
+                return new InMemoryConsentStore();
+            }
+        }
+
+        Path file = dataDirectoryPath.resolve(config.getString("consent-storage.file", "consent.db"));
+        if ("cluster".equalsIgnoreCase(storageType)) {
+            try {
+                return createClusteredConsentStore();
+            } catch (Exception e) {
+                logger.warning("Failed to connect to Redis, falling back to local consent store: " + e.getMessage());
+            }
+
+            // Once migrated the file is renamed, it still has every player that consented on this proxy before then
+            Path migrated = file.resolveSibling(file.getFileName() + ".migrated");
+            if (!Files.exists(file) && Files.exists(migrated)) file = migrated;
+        }
+
         try {
-            String fileName = config.getString("consent-storage.file", "consent.db");
-            return new LocalSqliteConsentStore(dataDirectoryPath.resolve(fileName), logger);
+            return new LocalSqliteConsentStore(file, logger);
         } catch (Exception e) {
             logger.warning("Failed to initialize consent storage, falling back to in-memory store: " + e.getMessage());
             return new InMemoryConsentStore();
         }
     }
 
-    private static ChannelStore createChannelStore() {
+    private static ClusteredConsentStore createClusteredConsentStore() throws java.io.IOException {
+        String keyPrefix = config.getString("channel-storage.key-prefix", "vlh");
+        String channel = ClusteredConsentStore.invalidationChannel(keyPrefix);
+        int negativeSize = config.getInt("consent-storage.cache.negative-size", 10000);
+        long negativeTtl = config.getLong("consent-storage.cache.negative-ttl", 60000L);
+
+        ClusteredConsentStore store;
+        if ("redis".equalsIgnoreCase(config.getString("consent-storage.cluster.backend", "redisbungee"))) {
+            StandaloneRedisStore redis = getStandaloneRedisStore();
+            try {
+                store = new ClusteredConsentStore(redis, new RespConsentMessenger(redis.getClient(), channel),
+                        redis.getProxyId(), logger, negativeSize, negativeTtl);
+            } catch (RuntimeException e) {
+                redis.close();
+                throw e;
+            }
+        } else {
+            if (proxyServer.getPluginManager().getPlugin("redisbungee").isEmpty()) {
+                throw new IllegalStateException("ValioBungee is not installed");
+            }
+            ValioBungeeDataStore redis = new ValioBungeeDataStore(keyPrefix, logger);
+            ValioBungeeConsentMessenger messenger = new ValioBungeeConsentMessenger(proxyServer.getEventManager(), instance, channel);
+            store = new ClusteredConsentStore(redis, messenger,
+                    AbstractRedisBungeeAPI.getAbstractRedisBungeeAPI().getProxyId(), logger, negativeSize, negativeTtl);
+        }
+
+        if (config.getBoolean("consent-storage.cluster.migrate-local", true)) {
+            migrateLocalConsent(store);
+        }
+        return store;
+    }
+
+    /**
+     * Copy the local consent file into the shared set once, then rename it so it isn't copied again
+     * @param store The clustered store to copy into
+     */
+    private static void migrateLocalConsent(ClusteredConsentStore store) {
+        Path file = dataDirectoryPath.resolve(config.getString("consent-storage.file", "consent.db"));
+        if (!Files.exists(file)) return;
+
+        int batchSize = config.getInt("consent-storage.cluster.migrate-batch-size", 1000);
+        long copied;
+        try (LocalSqliteConsentStore source = new LocalSqliteConsentStore(file, logger, 1)) {
+            copied = store.importFrom(source, batchSize);
+        } catch (Exception e) {
+            // The file stays in place, so the next start tries again
+            logger.warning("Failed to migrate local consent to Redis: " + e.getMessage());
+            return;
+        }
+
+        try {
+            Files.move(file, file.resolveSibling(file.getFileName() + ".migrated"), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            logger.warning("Migrated local consent, but failed to rename " + file.getFileName() + ": " + e.getMessage());
+        }
+        logger.info("Migrated " + copied + " consented players from " + file.getFileName() + " to Redis.");
+    }
+
+    private static AsyncChannelStore createChannelStore() {
+        AsyncChannelStore store = createBackingChannelStore();
+        if (!config.getBoolean("channel-storage.cache.enabled", false)) return store;
+
+        long maxStaleness = config.getLong("channel-storage.cache.max-staleness", 5000L);
+        return new CachingChannelStore(store, logger, maxStaleness);
+    }
+
+    private static AsyncChannelStore createBackingChannelStore() {
         String storageType = config.getString("channel-storage.type", "redisbungee");
         if ("memory".equalsIgnoreCase(storageType)) {
             return new InMemoryChannelStore();
         }
 
+        if ("redis".equalsIgnoreCase(storageType)) {
+            try {
+                return getStandaloneRedisStore();
+            } catch (Exception e) {
+                logger.warning("Failed to connect to Redis, falling back to in-memory channel store: " + e.getMessage());
+                return new InMemoryChannelStore();
+            }
+        }
+
         if (proxyServer.getPluginManager().getPlugin("redisbungee").isEmpty()) {
             logger.warning("ValioBungee is not installed. Falling back to in-memory channel store.");
             return new InMemoryChannelStore();
@@ -662,13 +1220,35 @@ public class VelocityLimboHandler {
 
         try {
             String keyPrefix = config.getString("channel-storage.key-prefix", "vlh");
-            return new ValioBungeeChannelStore(keyPrefix, logger);
+            ChannelCountMode countMode = ChannelCountMode.fromConfig(config.getString("channel-storage.count-mode", "shared"));
+            long leaseTtl = config.getLong("channel-storage.lease-ttl", 30000L);
+            return new ValioBungeeChannelStore(keyPrefix, logger, countMode, leaseTtl);
         } catch (Exception e) {
             logger.warning("Failed to initialize channel storage, falling back to in-memory store: " + e.getMessage());
             return new InMemoryChannelStore();
         }
     }
 
+    // Every caller gets its own reference, the store stays open until all of them closed it
+    private static StandaloneRedisStore getStandaloneRedisStore() throws java.io.IOException {
+        if (standaloneRedisStore != null) return standaloneRedisStore.retain();
+
+        String keyPrefix = config.getString("channel-storage.key-prefix", "vlh");
+        ChannelCountMode countMode = ChannelCountMode.fromConfig(config.getString("channel-storage.count-mode", "shared"));
+        String proxyId = config.getString("redis.proxy-id", "");
+        if (proxyId.isBlank()) {
+            // A restarted proxy has to find its own shard fields again, and host names change with every container
+            if (countMode == ChannelCountMode.SHARDED) {
+                logger.warning("Sharded channel counts need redis.proxy-id to be set, falling back to shared counts.");
+                countMode = ChannelCountMode.SHARED;
+            }
+            // Only has to tell the running proxies apart
+            proxyId = java.net.InetAddress.getLocalHost().getHostName() + ":" + proxyServer.getBoundAddress().getPort();
+        }
+        standaloneRedisStore = new StandaloneRedisStore(RedisConfig.fromConfig(config), keyPrefix, logger, countMode, proxyId);
+        return standaloneRedisStore;
+    }
+
     private static ConsentManager createConsentManager() {
         boolean consentEnabled = config.getBoolean("privacy-consent.enabled", true);
         if (!consentEnabled) return null;
@@ -8,7 +8,9 @@ import net.kyori.adventure.text.minimessage.MiniMessage;
 
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 
 public class ConsentManager {
     private static final long DEFAULT_PROMPT_COOLDOWN_MS = 5000L;
@@ -33,6 +35,16 @@ public class ConsentManager {
         return consentStore.hasConsent(player.getUniqueId());
     }
 
+    /**
+     * Look up consent without blocking the caller
+     * @param playerId The player to look up
+     * @param executor The executor the store is read on
+     * @return completes with whether the player has given consent
+     */
+    public CompletableFuture<Boolean> hasConsentAsync(UUID playerId, Executor executor) {
+        return CompletableFuture.supplyAsync(() -> consentStore.hasConsent(playerId), executor);
+    }
+
     public boolean isConsentRequired(Player player) {
         return !hasConsent(player);
     }
@@ -1,10 +1,12 @@
 package com.akselglyholt.velocityLimboHandler.group;
 
+import com.akselglyholt.velocityLimboHandler.health.BackendHealthMonitor;
 import com.akselglyholt.velocityLimboHandler.storage.ChannelStore;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 public class ChannelGroup {
@@ -31,6 +33,30 @@ public class ChannelGroup {
     }
 
     public Optional<String> selectServer(ChannelStore store, String excludedServer) {
+        return selectServer(store, excludedServer, null);
+    }
+
+    /**
+     * Pick the least populated server in the group
+     * @param store The store holding the channel counts
+     * @param excludedServer A server to avoid, usually the one the player is on
+     * @param healthMonitor Cached backend health used to skip servers known to be offline, may be null
+     * @return the selected server name
+     */
+    public Optional<String> selectServer(ChannelStore store, String excludedServer, BackendHealthMonitor healthMonitor) {
+        if (servers.isEmpty()) return Optional.empty();
+        // Read every count in one batch instead of once per server
+        return selectServer(store.getChannelCounts(servers), excludedServer, healthMonitor);
+    }
+
+    /**
+     * Pick the least populated server in the group, using counts that were already read
+     * @param counts The channel count of the group's servers, missing servers count as empty
+     * @param excludedServer A server to avoid, usually the one the player is on
+     * @param healthMonitor Cached backend health used to skip servers known to be offline, may be null
+     * @return the selected server name
+     */
+    public Optional<String> selectServer(Map<String, Integer> counts, String excludedServer, BackendHealthMonitor healthMonitor) {
         if (servers.isEmpty()) return Optional.empty();
         int limit = maxPlayers > 0 ? maxPlayers : Integer.MAX_VALUE;
         String best = null;
@@ -40,7 +66,8 @@ public class ChannelGroup {
             if (excludedServer != null && servers.size() > 1 && server.equalsIgnoreCase(excludedServer)) {
                 continue;
             }
-            int count = store.getChannelCount(server);
+            if (healthMonitor != null && healthMonitor.isKnownOffline(server)) continue;
+            int count = counts.getOrDefault(server, 0);
             if (count >= limit) continue;
             if (count < bestCount) {
                 best = server;
@@ -1,5 +1,7 @@
 package com.akselglyholt.velocityLimboHandler.group;
 
+import com.akselglyholt.velocityLimboHandler.health.BackendHealthMonitor;
+import com.akselglyholt.velocityLimboHandler.storage.AsyncChannelStore;
 import com.akselglyholt.velocityLimboHandler.storage.ChannelStore;
 import dev.dejvokep.boostedyaml.YamlDocument;
 import dev.dejvokep.boostedyaml.block.implementation.Section;
@@ -9,6 +11,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Logger;
 
 public class ChannelGroupRegistry {
@@ -70,8 +73,24 @@ public class ChannelGroupRegistry {
     }
 
     public Optional<String> selectServerForGroup(String groupName, ChannelStore store, String excludedServer) {
+        return selectServerForGroup(groupName, store, excludedServer, null);
+    }
+
+    public Optional<String> selectServerForGroup(String groupName, ChannelStore store, String excludedServer, BackendHealthMonitor healthMonitor) {
         ChannelGroup group = groups.get(groupName);
         if (group == null) return Optional.empty();
-        return group.selectServer(store, excludedServer);
+        return group.selectServer(store, excludedServer, healthMonitor);
+    }
+
+    /**
+     * Like {@link #selectServerForGroup(String, ChannelStore, String, BackendHealthMonitor)}, without blocking on the store
+     * @return the selected server name once the counts have been read
+     */
+    public CompletableFuture<Optional<String>> selectServerForGroupAsync(String groupName, AsyncChannelStore store,
+                                                                         String excludedServer, BackendHealthMonitor healthMonitor) {
+        ChannelGroup group = groups.get(groupName);
+        if (group == null) return CompletableFuture.completedFuture(Optional.empty());
+        return store.getChannelCountsAsync(group.getServers())
+                .thenApply(counts -> group.selectServer(counts, excludedServer, healthMonitor));
     }
 }
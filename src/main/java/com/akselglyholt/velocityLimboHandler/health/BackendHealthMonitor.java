@@ -0,0 +1,198 @@
+package com.akselglyholt.velocityLimboHandler.health;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.proxy.server.ServerPing;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+/**
+ * Pings every registered server on a fixed schedule and caches the result,
+ * so reconnect attempts for many players share one ping per backend.
+ * Every backend also has a circuit breaker, so servers that keep failing are left alone for a while.
+ */
+public class BackendHealthMonitor {
+    private final ProxyServer proxyServer;
+    private final Logger logger;
+    private final long ttlMillis;
+    private final int failureThreshold;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+    private final Map<String, BackendStatus> statuses = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<BackendStatus>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final List<Consumer<RegisteredServer>> recoveryListeners = new CopyOnWriteArrayList<>();
+
+    public BackendHealthMonitor(ProxyServer proxyServer, Logger logger, long ttlMillis,
+                                int failureThreshold, long baseBackoffMillis, long maxBackoffMillis) {
+        this.proxyServer = proxyServer;
+        this.logger = logger;
+        this.ttlMillis = ttlMillis;
+        this.failureThreshold = failureThreshold;
+        this.baseBackoffMillis = baseBackoffMillis;
+        this.maxBackoffMillis = maxBackoffMillis;
+    }
+
+    public void start(Object plugin, long intervalMillis) {
+        proxyServer.getScheduler().buildTask(plugin, this::refreshAll)
+                .repeat(intervalMillis, TimeUnit.MILLISECONDS)
+                .schedule();
+    }
+
+    public void refreshAll() {
+        for (RegisteredServer server : proxyServer.getAllServers()) {
+            refresh(server);
+        }
+    }
+
+    // Called with the server whenever it goes from offline to online
+    public void addRecoveryListener(Consumer<RegisteredServer> listener) {
+        recoveryListeners.add(listener);
+    }
+
+    /**
+     * Ping a server now. Concurrent callers for the same server share the ping that is already running,
+     * and servers with an open circuit aren't pinged at all.
+     * @param server The server to ping
+     * @return the status once the ping completes, never completed exceptionally
+     */
+    public CompletableFuture<BackendStatus> refresh(RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        CompletableFuture<BackendStatus> created = new CompletableFuture<>();
+        CompletableFuture<BackendStatus> existing = inFlight.putIfAbsent(serverName, created);
+        if (existing != null) return existing;
+
+        // The half-open probe is left to a player, a ping can't tell whether joining works
+        if (!getBreaker(serverName).allowsPing()) {
+            inFlight.remove(serverName, created);
+            created.complete(BackendStatus.offline(System.currentTimeMillis()));
+            return created;
+        }
+
+        long start = System.nanoTime();
+        server.ping().whenComplete((ping, throwable) -> {
+            long now = System.currentTimeMillis();
+            BackendStatus status;
+
+            if (throwable != null || ping == null) {
+                status = BackendStatus.offline(now);
+                recordPingFailure(serverName);
+            } else {
+                long rtt = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                // A ping without player info is treated as full, like before
+                ServerPing.Players players = ping.getPlayers().orElse(null);
+                status = players == null
+                        ? new BackendStatus(true, 0, 0, rtt, now)
+                        : new BackendStatus(true, players.getOnline(), players.getMax(), rtt, now);
+                getBreaker(serverName).recordPingSuccess();
+            }
+
+            BackendStatus previous = statuses.put(serverName, status);
+            inFlight.remove(serverName, created);
+            created.complete(status);
+
+            if (status.isOnline() && previous != null && !previous.isOnline()) {
+                for (Consumer<RegisteredServer> listener : recoveryListeners) {
+                    listener.accept(server);
+                }
+            }
+        });
+
+        return created;
+    }
+
+    /**
+     * @param server The server of which you want the status
+     * @return the cached status if it's still fresh, otherwise the result of a new (shared) ping
+     */
+    public CompletableFuture<BackendStatus> getStatus(RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        if (!getBreaker(serverName).allowsTraffic()) {
+            return CompletableFuture.completedFuture(BackendStatus.offline(System.currentTimeMillis()));
+        }
+
+        BackendStatus status = getCachedStatus(serverName);
+        if (status != null) return CompletableFuture.completedFuture(status);
+        return refresh(server);
+    }
+
+    /**
+     * @param serverName The name of the server
+     * @return the cached status, or null if there is none or it's older than the TTL
+     */
+    public BackendStatus getCachedStatus(String serverName) {
+        BackendStatus status = statuses.get(serverName);
+        if (status == null) return null;
+        if (System.currentTimeMillis() - status.getCheckedAt() > ttlMillis) return null;
+        return status;
+    }
+
+    // Unknown servers are not considered offline
+    public boolean isKnownOffline(String serverName) {
+        if (!getBreaker(serverName).allowsTraffic()) return true;
+        BackendStatus status = getCachedStatus(serverName);
+        return status != null && !status.isOnline();
+    }
+
+    // False while the server's circuit is open, or while its half-open probe is running
+    public boolean allowsTraffic(String serverName) {
+        return getBreaker(serverName).allowsTraffic();
+    }
+
+    // True while the server's circuit isn't closed, the next player sent there has to be its probe
+    public boolean needsProbe(String serverName) {
+        return getBreaker(serverName).needsProbe();
+    }
+
+    /**
+     * Claim the half-open probe of a server
+     * @return true if the caller may send one player to find out whether the server is back
+     */
+    public boolean tryAcquireProbe(String serverName) {
+        return getBreaker(serverName).tryAcquire();
+    }
+
+    // The probe ended without saying anything about the server, the next one may go
+    public void releaseProbe(String serverName) {
+        getBreaker(serverName).releaseProbe();
+    }
+
+    public void recordAdmissions(String serverName, int count) {
+        statuses.computeIfPresent(serverName, (name, status) -> status.withAdmissions(count));
+    }
+
+    public void recordSuccess(String serverName) {
+        CircuitBreaker.State previous = getBreaker(serverName).recordSuccess();
+        if (previous != CircuitBreaker.State.CLOSED) {
+            logger.info("Server " + serverName + " is reachable again, resuming reconnects.");
+        }
+    }
+
+    public void recordFailure(String serverName) {
+        CircuitBreaker breaker = getBreaker(serverName);
+        if (breaker.recordFailure()) {
+            long seconds = Math.max(0, breaker.getOpenUntil() - System.currentTimeMillis()) / 1000;
+            logger.info("Server " + serverName + " keeps failing, pausing reconnects for " + seconds + "s.");
+        }
+    }
+
+    private void recordPingFailure(String serverName) {
+        CircuitBreaker breaker = getBreaker(serverName);
+        if (breaker.recordPingFailure()) {
+            long seconds = Math.max(0, breaker.getOpenUntil() - System.currentTimeMillis()) / 1000;
+            logger.info("Server " + serverName + " isn't answering pings, pausing reconnects for " + seconds + "s.");
+        }
+    }
+
+    private CircuitBreaker getBreaker(String serverName) {
+        return breakers.computeIfAbsent(serverName,
+                name -> new CircuitBreaker(failureThreshold, baseBackoffMillis, maxBackoffMillis));
+    }
+}
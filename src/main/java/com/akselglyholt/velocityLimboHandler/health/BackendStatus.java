@@ -0,0 +1,57 @@
+package com.akselglyholt.velocityLimboHandler.health;
+
+/**
+ * Result of a single ping against a backend server
+ */
+public final class BackendStatus {
+    private final boolean online;
+    private final int onlinePlayers;
+    private final int maxPlayers;
+    private final long rttMillis;
+    private final long checkedAt;
+
+    public BackendStatus(boolean online, int onlinePlayers, int maxPlayers, long rttMillis, long checkedAt) {
+        this.online = online;
+        this.onlinePlayers = onlinePlayers;
+        this.maxPlayers = maxPlayers;
+        this.rttMillis = rttMillis;
+        this.checkedAt = checkedAt;
+    }
+
+    public static BackendStatus offline(long checkedAt) {
+        return new BackendStatus(false, 0, 0, -1, checkedAt);
+    }
+
+    public boolean isOnline() {
+        return online;
+    }
+
+    public int getOnlinePlayers() {
+        return onlinePlayers;
+    }
+
+    public int getMaxPlayers() {
+        return maxPlayers;
+    }
+
+    public long getRttMillis() {
+        return rttMillis;
+    }
+
+    public long getCheckedAt() {
+        return checkedAt;
+    }
+
+    public boolean hasFreeSlot() {
+        return online && onlinePlayers < maxPlayers;
+    }
+
+    public int getFreeSlots() {
+        return online ? Math.max(0, maxPlayers - onlinePlayers) : 0;
+    }
+
+    // Count players we've sent to the server since the ping, so the cache doesn't overfill it
+    BackendStatus withAdmissions(int count) {
+        return new BackendStatus(online, onlinePlayers + count, maxPlayers, rttMillis, checkedAt);
+    }
+}
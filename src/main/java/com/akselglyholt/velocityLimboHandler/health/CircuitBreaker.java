@@ -0,0 +1,168 @@
+package com.akselglyholt.velocityLimboHandler.health;
+
+/**
+ * Per-backend circuit breaker.
+ * Closed lets everything through, open rejects everything until its backoff has passed,
+ * and half-open lets a single probe through to decide whether to close or re-open.
+ * Each consecutive trip doubles the backoff, up to the configured maximum.
+ */
+public final class CircuitBreaker {
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    // A probe that hasn't reported back by then is given up on, so a lost one doesn't hold the circuit forever
+    private static final long PROBE_TIMEOUT_MILLIS = 30000;
+
+    private final int failureThreshold;
+    private final long baseBackoffMillis;
+    private final long maxBackoffMillis;
+
+    private State state = State.CLOSED;
+    // Connection failures in a row
+    private int failures;
+    // Ping failures in a row, kept apart so a server that answers pings can still trip on failed connects
+    private int pingFailures;
+    private int trips;
+    private long openUntil;
+    private boolean probeInFlight;
+    private long probeStartedAt;
+
+    public CircuitBreaker(int failureThreshold, long baseBackoffMillis, long maxBackoffMillis) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.baseBackoffMillis = Math.max(1, baseBackoffMillis);
+        this.maxBackoffMillis = Math.max(this.baseBackoffMillis, maxBackoffMillis);
+    }
+
+    /**
+     * Ask to send a request through the breaker. In half-open state only the first caller gets through.
+     * @return true if the request may be sent
+     */
+    public synchronized boolean tryAcquire() {
+        long now = System.currentTimeMillis();
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (now < openUntil) return false;
+                state = State.HALF_OPEN;
+                break;
+            default:
+                if (isProbing(now)) return false;
+                break;
+        }
+        probeInFlight = true;
+        probeStartedAt = now;
+        return true;
+    }
+
+    // Same as tryAcquire, but without claiming the half-open probe
+    public synchronized boolean allowsTraffic() {
+        long now = System.currentTimeMillis();
+        switch (state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                return now >= openUntil;
+            default:
+                return !isProbing(now);
+        }
+    }
+
+    /**
+     * @return true unless the circuit is open and its backoff hasn't passed yet
+     */
+    public synchronized boolean allowsPing() {
+        return state != State.OPEN || System.currentTimeMillis() >= openUntil;
+    }
+
+    /**
+     * @return true if the next request must claim the probe with {@link #tryAcquire()}
+     */
+    public synchronized boolean needsProbe() {
+        return state != State.CLOSED;
+    }
+
+    private boolean isProbing(long now) {
+        return probeInFlight && now - probeStartedAt < PROBE_TIMEOUT_MILLIS;
+    }
+
+    /**
+     * Record a successful connection, which closes the circuit
+     * @return the state before the success was recorded
+     */
+    public synchronized State recordSuccess() {
+        State previous = state;
+        state = State.CLOSED;
+        failures = 0;
+        pingFailures = 0;
+        trips = 0;
+        probeInFlight = false;
+        return previous;
+    }
+
+    /**
+     * Record a connection failure
+     * @return true if this failure opened the circuit
+     */
+    public synchronized boolean recordFailure() {
+        if (state == State.HALF_OPEN) {
+            open();
+            return true;
+        }
+        if (state == State.OPEN) return false;
+
+        failures++;
+        if (failures < failureThreshold) return false;
+
+        open();
+        return true;
+    }
+
+    // A server answering pings says nothing about whether players can join it, so the circuit stays as it is
+    public synchronized void recordPingSuccess() {
+        pingFailures = 0;
+    }
+
+    /**
+     * @return true if this failure opened the circuit
+     */
+    public synchronized boolean recordPingFailure() {
+        // Past its backoff the server still doesn't answer, so back off again without waiting for a probe
+        if (state != State.CLOSED) {
+            open();
+            return true;
+        }
+
+        pingFailures++;
+        if (pingFailures < failureThreshold) return false;
+
+        open();
+        return true;
+    }
+
+    /**
+     * Give up the half-open probe without a verdict, e.g. because the player was kicked for a reason of their own
+     */
+    public synchronized void releaseProbe() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    public synchronized long getOpenUntil() {
+        return openUntil;
+    }
+
+    private void open() {
+        trips++;
+        long backoff = baseBackoffMillis << Math.min(trips - 1, 20);
+        if (backoff <= 0 || backoff > maxBackoffMillis) backoff = maxBackoffMillis;
+
+        state = State.OPEN;
+        failures = 0;
+        pingFailures = 0;
+        probeInFlight = false;
+        openUntil = System.currentTimeMillis() + backoff;
+    }
+}
@@ -0,0 +1,126 @@
+package com.akselglyholt.velocityLimboHandler.health;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Ramps up admissions to a backend that just came back, so a cold server isn't hit by the whole queue at once.
+ * The admission rate starts at a fraction of full speed and grows linearly over the ramp window.
+ * While the server's ping RTT is well above what it was when it recovered, admissions pause and the ramp stands still.
+ */
+public class SlowStartController {
+    // RTTs below this are treated as equal, so a 1ms LAN baseline doesn't pause on every jitter
+    private static final long MIN_BASELINE_RTT_MS = 20;
+
+    private final BackendHealthMonitor healthMonitor;
+    private final long windowMillis;
+    private final double floor;
+    private final double rttPauseFactor;
+    private final long tickMillis;
+    private final Map<String, Ramp> ramps = new ConcurrentHashMap<>();
+
+    private static final class Ramp {
+        long startedAt;
+        long lastRefill;
+        long pausedAt = -1;
+        long baselineRtt;
+        double permits;
+    }
+
+    /**
+     * @param healthMonitor Source of the RTT readings
+     * @param windowMillis How long it takes to reach full speed
+     * @param floor The share of full speed to start at, between 0 and 1
+     * @param rttPauseFactor Pause while RTT is more than this many times the baseline
+     * @param tickMillis The interval the full admission limit applies to
+     */
+    public SlowStartController(BackendHealthMonitor healthMonitor, long windowMillis, double floor,
+                               double rttPauseFactor, long tickMillis) {
+        this.healthMonitor = healthMonitor;
+        this.windowMillis = Math.max(1, windowMillis);
+        this.floor = Math.min(1.0, Math.max(0.0, floor));
+        this.rttPauseFactor = Math.max(1.0, rttPauseFactor);
+        this.tickMillis = Math.max(1, tickMillis);
+    }
+
+    public void begin(RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        BackendStatus status = healthMonitor.getCachedStatus(serverName);
+
+        Ramp ramp = new Ramp();
+        ramp.startedAt = System.currentTimeMillis();
+        ramp.lastRefill = ramp.startedAt;
+        ramp.baselineRtt = Math.max(MIN_BASELINE_RTT_MS, status == null ? 0 : status.getRttMillis());
+        ramps.put(serverName, ramp);
+    }
+
+    public boolean isRamping(String serverName) {
+        return ramps.containsKey(serverName);
+    }
+
+    /**
+     * Take admission permits for a server
+     * @param serverName The server players would be admitted to
+     * @param fullLimit How many players may be admitted per tick at full speed
+     * @param wanted How many players the caller would like to admit
+     * @return how many players may be admitted now, at most wanted
+     */
+    public int acquire(String serverName, int fullLimit, int wanted) {
+        Ramp ramp = ramps.get(serverName);
+        if (ramp == null) return wanted;
+
+        synchronized (ramp) {
+            long now = System.currentTimeMillis();
+
+            if (isDegraded(serverName, ramp)) {
+                if (ramp.pausedAt < 0) ramp.pausedAt = now;
+                return 0;
+            }
+
+            // Don't count time spent paused towards the ramp
+            if (ramp.pausedAt >= 0) {
+                long paused = now - ramp.pausedAt;
+                ramp.startedAt += paused;
+                ramp.lastRefill = now;
+                ramp.pausedAt = -1;
+            }
+
+            long elapsed = now - ramp.startedAt;
+            if (elapsed >= windowMillis) {
+                ramps.remove(serverName, ramp);
+                return wanted;
+            }
+
+            double fraction = floor + (1.0 - floor) * elapsed / windowMillis;
+            double perTick = fullLimit * fraction;
+            ramp.permits = Math.min(Math.max(1.0, perTick), ramp.permits + perTick * (now - ramp.lastRefill) / tickMillis);
+            ramp.lastRefill = now;
+
+            int granted = Math.min(wanted, (int) ramp.permits);
+            ramp.permits -= granted;
+            return granted;
+        }
+    }
+
+    /**
+     * Give back permits that were acquired but not used, e.g. because fewer players were queued than expected
+     * @param serverName The server the permits were acquired for
+     * @param unused How many of them weren't used
+     */
+    public void release(String serverName, int unused) {
+        Ramp ramp = ramps.get(serverName);
+        if (ramp == null || unused <= 0) return;
+
+        synchronized (ramp) {
+            ramp.permits += unused;
+        }
+    }
+
+    private boolean isDegraded(String serverName, Ramp ramp) {
+        BackendStatus status = healthMonitor.getCachedStatus(serverName);
+        if (status == null || !status.isOnline()) return false;
+        return status.getRttMillis() > ramp.baselineRtt * rttPauseFactor;
+    }
+}
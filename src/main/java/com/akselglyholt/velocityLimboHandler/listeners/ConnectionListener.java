@@ -4,10 +4,14 @@ import com.akselglyholt.velocityLimboHandler.VelocityLimboHandler;
 import com.akselglyholt.velocityLimboHandler.consent.ConsentManager;
 import com.akselglyholt.velocityLimboHandler.group.ChannelGroup;
 import com.akselglyholt.velocityLimboHandler.group.ChannelGroupRegistry;
+import com.akselglyholt.velocityLimboHandler.health.BackendHealthMonitor;
 import com.akselglyholt.velocityLimboHandler.misc.Utility;
-import com.akselglyholt.velocityLimboHandler.storage.ChannelStore;
+import com.akselglyholt.velocityLimboHandler.storage.AsyncChannelStore;
+import com.akselglyholt.velocityLimboHandler.storage.LoginPreload;
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.connection.LoginEvent;
 import com.velocitypowered.api.event.player.ServerPostConnectEvent;
 import com.velocitypowered.api.event.player.ServerPreConnectEvent;
 import com.velocitypowered.api.proxy.Player;
@@ -18,18 +22,64 @@ import org.jetbrains.annotations.NotNull;
 import java.net.InetSocketAddress;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class ConnectionListener {
 
+    // Consent, last group and current channel are loaded while the player logs in,
+    // so their first server selection doesn't have to wait on the stores
     @Subscribe
-    public void onPlayerPreConnect(@NotNull ServerPreConnectEvent event) {
+    public EventTask onLogin(@NotNull LoginEvent event) {
+        // A denied login never gets to pre-connect, so there's nothing to preload for
+        if (!event.getResult().isAllowed()) return null;
+
+        Player player = event.getPlayer();
+        ConsentManager consentManager = VelocityLimboHandler.getConsentManager();
+        AsyncChannelStore channelStore = VelocityLimboHandler.getChannelStore();
+        if (consentManager == null && channelStore == null) return null;
+
+        CompletableFuture<Boolean> consentLookup = consentManager != null
+                ? consentManager.hasConsentAsync(player.getUniqueId(), VelocityLimboHandler.getAsyncExecutor())
+                : CompletableFuture.completedFuture(true);
+        CompletableFuture<String> lastGroupLookup = channelStore != null
+                ? channelStore.getLastGroupAsync(player.getUniqueId())
+                : CompletableFuture.completedFuture(null);
+        CompletableFuture<String> currentChannelLookup = channelStore != null
+                ? channelStore.getCurrentChannelAsync(player.getUniqueId())
+                : CompletableFuture.completedFuture(null);
+
+        CompletableFuture<Void> loaded = CompletableFuture.allOf(consentLookup, lastGroupLookup, currentChannelLookup)
+                .thenRun(() -> {
+                    VelocityLimboHandler.getPlayerManager().storePreload(player.getUniqueId(),
+                            new LoginPreload(consentLookup.join(), lastGroupLookup.join(), currentChannelLookup.join()));
+                    // The player may have left while the lookups ran, after their disconnect already cleared the session
+                    if (!player.isActive()) VelocityLimboHandler.getPlayerManager().clearPreload(player);
+                })
+                .exceptionally(throwable -> {
+                    // Pre-connect looks everything up itself when nothing was preloaded
+                    VelocityLimboHandler.getLogger().warning("Failed to preload the login of "
+                            + player.getUsername() + ": " + throwable.getMessage());
+                    return null;
+                });
+        return EventTask.resumeWhenComplete(loaded);
+    }
+
+    // Store lookups run asynchronously, so a slow store doesn't hold up the event threads
+    @Subscribe
+    public EventTask onPlayerPreConnect(@NotNull ServerPreConnectEvent event) {
         Player player = event.getPlayer();
         RegisteredServer intendedServer = event.getOriginalServer();
         RegisteredServer limbo = VelocityLimboHandler.getLimboServer();
         ChannelGroupRegistry groupRegistry = VelocityLimboHandler.getChannelGroupRegistry();
 
+        // Only the initial join uses the preload, later switches may have changed what's stored
+        boolean initialJoin = player.getCurrentServer().isEmpty();
+        LoginPreload preload = initialJoin ? VelocityLimboHandler.getPlayerManager().consumePreload(player) : null;
+
         ConsentManager consentManager = VelocityLimboHandler.getConsentManager();
-        if (consentManager != null && consentManager.isConsentRequired(player)) {
+        boolean consentRequired = consentManager != null
+                && (preload != null ? !preload.hasConsent() : consentManager.isConsentRequired(player));
+        if (consentRequired) {
             if (groupRegistry != null && intendedServer != null) {
                 ChannelGroup group = groupRegistry.getGroupForServer(intendedServer.getServerInfo().getName());
                 if (group != null) {
@@ -40,32 +90,32 @@ public class ConnectionListener {
                 event.setResult(ServerPreConnectEvent.ServerResult.allowed(limbo));
             }
             consentManager.sendPrompt(player);
-            return;
+            return null;
         }
 
-        RegisteredServer targetServer = intendedServer;
-        if (player.getCurrentServer().isEmpty()) {
-            ChannelStore channelStore = VelocityLimboHandler.getChannelStore();
-            if (channelStore != null && groupRegistry != null) {
-                String lastGroup = channelStore.getLastGroup(player.getUniqueId());
-                if (lastGroup == null) {
-                    lastGroup = VelocityLimboHandler.getDefaultGroupName();
-                }
-                if (lastGroup != null) {
-                    String excludedServer = player.getCurrentServer()
-                            .map(ServerConnection::getServer)
-                            .map(srv -> srv.getServerInfo().getName())
-                            .orElse(channelStore.getCurrentChannel(player.getUniqueId()));
-                    Optional<RegisteredServer> selectedServer = groupRegistry
-                            .selectServerForGroup(lastGroup, channelStore, excludedServer)
-                            .flatMap(name -> VelocityLimboHandler.getProxyServer().getServer(name));
-                    if (selectedServer.isPresent()) {
-                        targetServer = selectedServer.get();
-                    }
-                }
-            }
+        AsyncChannelStore channelStore = VelocityLimboHandler.getChannelStore();
+        if (initialJoin && channelStore != null && groupRegistry != null) {
+            // Initial join, send the player to the least populated server of their last group
+            CompletableFuture<Void> routed = selectFromLastGroup(player, channelStore, groupRegistry, preload)
+                    .exceptionally(throwable -> {
+                        VelocityLimboHandler.getLogger().warning("Failed to look up the last group of "
+                                + player.getUsername() + ": " + throwable.getMessage());
+                        return null;
+                    })
+                    .thenAccept(selected -> routePreConnect(event, player, intendedServer,
+                            selected != null ? selected : intendedServer));
+            return EventTask.resumeWhenComplete(routed);
         }
 
+        routePreConnect(event, player, intendedServer, intendedServer);
+        return null;
+    }
+
+    private void routePreConnect(ServerPreConnectEvent event, Player player, RegisteredServer intendedServer,
+                                 RegisteredServer targetServer) {
+        RegisteredServer limbo = VelocityLimboHandler.getLimboServer();
+        ChannelGroupRegistry groupRegistry = VelocityLimboHandler.getChannelGroupRegistry();
+
         if (targetServer != intendedServer) {
             event.setResult(ServerPreConnectEvent.ServerResult.allowed(targetServer));
         }
@@ -98,11 +148,21 @@ public class ConnectionListener {
 
             VelocityLimboHandler.getLogger().info(String.format("Rerouting %s to Limbo (Server %s is queued)",
                     player.getUsername(), targetServer.getServerInfo().getName()));
+            return;
+        }
+
+        // Don't let the player time out against a server the health monitor already knows is down
+        BackendHealthMonitor healthMonitor = VelocityLimboHandler.getHealthMonitor();
+        if (limbo != null && healthMonitor != null && healthMonitor.isKnownOffline(targetServer.getServerInfo().getName())) {
+            event.setResult(ServerPreConnectEvent.ServerResult.allowed(limbo));
+
+            VelocityLimboHandler.getLogger().info(String.format("Rerouting %s to Limbo (Server %s is offline)",
+                    player.getUsername(), targetServer.getServerInfo().getName()));
         }
     }
 
     @Subscribe
-    public void onPlayerPostConnect(@NotNull ServerPostConnectEvent event) {
+    public EventTask onPlayerPostConnect(@NotNull ServerPostConnectEvent event) {
         Player player = event.getPlayer();
 
         RegisteredServer limbo = VelocityLimboHandler.getLimboServer();
@@ -111,147 +171,220 @@ public class ConnectionListener {
 
         if (currentServer == null) {
             VelocityLimboHandler.getLogger().severe(String.format("Current server was null for %s.", player.getUsername()));
-            return;
+            return null;
         }
 
-        ChannelStore channelStore = VelocityLimboHandler.getChannelStore();
+        AsyncChannelStore channelStore = VelocityLimboHandler.getChannelStore();
         ChannelGroupRegistry groupRegistry = VelocityLimboHandler.getChannelGroupRegistry();
 
         ChannelGroup previousGroup = null;
-        ChannelGroup currentGroup = null;
+        CompletableFuture<Void> recorded = CompletableFuture.completedFuture(null);
 
         if (channelStore != null && groupRegistry != null) {
+            String fromServer = null;
             if (previousServer != null) {
                 previousGroup = groupRegistry.getGroupForServer(previousServer.getServerInfo().getName());
                 if (!Utility.doServerNamesMatch(previousServer, currentServer) && previousGroup != null) {
-                    channelStore.decrementChannelCount(previousServer.getServerInfo().getName());
+                    fromServer = previousServer.getServerInfo().getName();
                 }
             }
 
-            currentGroup = groupRegistry.getGroupForServer(currentServer.getServerInfo().getName());
-            if (currentGroup != null) {
-                channelStore.incrementChannelCount(currentServer.getServerInfo().getName());
-            }
-
-            channelStore.setCurrentChannel(player.getUniqueId(), currentServer.getServerInfo().getName());
+            ChannelGroup currentGroup = groupRegistry.getGroupForServer(currentServer.getServerInfo().getName());
+            String toServer = currentGroup != null ? currentServer.getServerInfo().getName() : null;
 
+            String lastGroup = null;
             if (previousGroup != null && limbo != null && Utility.doServerNamesMatch(currentServer, limbo)) {
-                channelStore.setLastGroup(player.getUniqueId(), previousGroup.getName());
+                lastGroup = previousGroup.getName();
             } else if (currentGroup != null) {
-                channelStore.setLastGroup(player.getUniqueId(), currentGroup.getName());
+                lastGroup = currentGroup.getName();
             }
+
+            // Counts, current channel and last group are written as one batch
+            recorded = channelStore.recordTransferAsync(player.getUniqueId(), fromServer, toServer,
+                    currentServer.getServerInfo().getName(), lastGroup)
+                    .exceptionally(throwable -> {
+                        VelocityLimboHandler.getLogger().warning("Failed to record the server switch of "
+                                + player.getUsername() + ": " + throwable.getMessage());
+                        return null;
+                    });
+        }
+
+        ChannelGroup resolvedPreviousGroup = previousGroup;
+        return EventTask.resumeWhenComplete(recorded
+                // The player is counted now, so the slot held for the connect can go
+                .thenCompose(ignored -> VelocityLimboHandler.releaseReservation(player))
+                .thenCompose(ignored -> afterServerSwitch(player, previousServer, currentServer, resolvedPreviousGroup)));
+    }
+
+    // Runs once the switch is in the store, so drains and group selection see the updated counts
+    private CompletableFuture<Void> afterServerSwitch(Player player, RegisteredServer previousServer,
+                                                     RegisteredServer currentServer, ChannelGroup previousGroup) {
+        RegisteredServer limbo = VelocityLimboHandler.getLimboServer();
+
+        // The player left a backend, so its queue may be able to move into the freed slot
+        if (previousServer != null && !Utility.doServerNamesMatch(previousServer, currentServer)) {
+            VelocityLimboHandler.signalDrain(previousServer);
         }
 
         // Remove player from queue if they left Limbo and joined another server
         if (previousServer != null && limbo != null && Utility.doServerNamesMatch(previousServer, limbo)) {
             VelocityLimboHandler.getPlayerManager().removePlayer(player);
-            return;
+            return CompletableFuture.completedFuture(null);
         }
 
         // Handle players who just joined Limbo
-        if (limbo != null && Utility.doServerNamesMatch(currentServer, limbo)) {
-            // Determine intended server from forced host if available
-            String virtualHost = player.getVirtualHost().map(InetSocketAddress::getHostName).orElse(null);
-
-            RegisteredServer intendedTarget = null;
-
-            if (virtualHost != null) {
-                List<String> forcedServers = VelocityLimboHandler.getProxyServer()
-                        .getConfiguration()
-                        .getForcedHosts()
-                        .get(virtualHost);
-
-                if (forcedServers != null && !forcedServers.isEmpty()) {
-                    intendedTarget = VelocityLimboHandler.getProxyServer()
-                            .getServer(forcedServers.get(0))
-                            .orElse(null);
-                }
-            }
+        if (limbo == null || !Utility.doServerNamesMatch(currentServer, limbo)) {
+            return CompletableFuture.completedFuture(null);
+        }
 
-            if (intendedTarget == null) {
-                intendedTarget = VelocityLimboHandler.getPlayerManager().consumeIntendedServer(player);
-            }
+        // Determine intended server from forced host if available
+        String virtualHost = player.getVirtualHost().map(InetSocketAddress::getHostName).orElse(null);
 
-            // Fallback to previous server or default
-            if (intendedTarget == null) {
-                if (previousServer != null) {
-                    if (channelStore != null && groupRegistry != null) {
-                        ChannelGroup previousGroupResolved = previousGroup != null
-                                ? previousGroup
-                                : groupRegistry.getGroupForServer(previousServer.getServerInfo().getName());
-                        if (previousGroupResolved != null) {
-                            String excludedServer = channelStore.getCurrentChannel(player.getUniqueId());
-                            if (excludedServer == null) {
-                                excludedServer = previousServer.getServerInfo().getName();
-                            }
-                            Optional<RegisteredServer> selectedServer = groupRegistry
-                                    .selectServerForGroup(previousGroupResolved.getName(), channelStore, excludedServer)
-                                    .flatMap(name -> VelocityLimboHandler.getProxyServer().getServer(name));
-
-                            if (selectedServer.isPresent()) {
-                                intendedTarget = selectedServer.get();
-                            }
-                        }
-                    }
-
-                    if (intendedTarget == null) {
-                        intendedTarget = previousServer;
-                    }
-                } else {
-                    if (channelStore != null && groupRegistry != null) {
-                        String lastGroup = channelStore.getLastGroup(player.getUniqueId());
-                        if (lastGroup == null) {
-                            lastGroup = VelocityLimboHandler.getDefaultGroupName();
-                        }
-                        if (lastGroup != null) {
-                            String excludedServer = channelStore.getCurrentChannel(player.getUniqueId());
-                            Optional<RegisteredServer> selectedServer = groupRegistry
-                                    .selectServerForGroup(lastGroup, channelStore, excludedServer)
-                                    .flatMap(name -> VelocityLimboHandler.getProxyServer().getServer(name));
-
-                            if (selectedServer.isPresent()) {
-                                intendedTarget = selectedServer.get();
-                            }
-                        }
-                    }
-
-                    if (intendedTarget == null) {
-                        intendedTarget = VelocityLimboHandler.getDirectConnectServer();
-                    }
-                }
+        RegisteredServer intendedTarget = null;
+
+        if (virtualHost != null) {
+            List<String> forcedServers = VelocityLimboHandler.getProxyServer()
+                    .getConfiguration()
+                    .getForcedHosts()
+                    .get(virtualHost);
+
+            if (forcedServers != null && !forcedServers.isEmpty()) {
+                intendedTarget = VelocityLimboHandler.getProxyServer()
+                        .getServer(forcedServers.get(0))
+                        .orElse(null);
             }
+        }
+
+        if (intendedTarget == null) {
+            intendedTarget = VelocityLimboHandler.getPlayerManager().consumeIntendedServer(player);
+        }
 
-            VelocityLimboHandler.getPlayerManager().addPlayer(player, intendedTarget);
+        CompletableFuture<RegisteredServer> target = intendedTarget != null
+                ? CompletableFuture.completedFuture(intendedTarget)
+                : resolveFallbackTarget(player, previousServer, previousGroup);
+
+        return target.thenAccept(resolved -> {
+            VelocityLimboHandler.getPlayerManager().addPlayer(player, resolved);
             VelocityLimboHandler.getPlayerManager().enqueuePlayer(player);
             ConsentManager consentManager = VelocityLimboHandler.getConsentManager();
             if (consentManager != null && consentManager.isConsentRequired(player)) {
                 consentManager.sendPrompt(player);
             }
-        }
+        });
     }
 
-    @Subscribe
-    public void onDisconnect(@NotNull DisconnectEvent event) {
-        Player player = event.getPlayer();
-        ChannelStore channelStore = VelocityLimboHandler.getChannelStore();
+    // Fallback to previous server or default
+    private CompletableFuture<RegisteredServer> resolveFallbackTarget(Player player, RegisteredServer previousServer,
+                                                                     ChannelGroup previousGroup) {
+        AsyncChannelStore channelStore = VelocityLimboHandler.getChannelStore();
         ChannelGroupRegistry groupRegistry = VelocityLimboHandler.getChannelGroupRegistry();
 
-        if (channelStore != null && groupRegistry != null) {
-            RegisteredServer currentServer = player.getCurrentServer()
-                    .map(ServerConnection::getServer)
-                    .orElse(null);
-            if (currentServer != null) {
-                ChannelGroup group = groupRegistry.getGroupForServer(currentServer.getServerInfo().getName());
-                if (group != null) {
-                    channelStore.decrementChannelCount(currentServer.getServerInfo().getName());
-                    channelStore.setLastGroup(player.getUniqueId(), group.getName());
-                }
+        if (previousServer != null) {
+            if (channelStore == null || groupRegistry == null) {
+                return CompletableFuture.completedFuture(previousServer);
             }
-            channelStore.clearCurrentChannel(player.getUniqueId());
+
+            ChannelGroup previousGroupResolved = previousGroup != null
+                    ? previousGroup
+                    : groupRegistry.getGroupForServer(previousServer.getServerInfo().getName());
+            if (previousGroupResolved == null) {
+                return CompletableFuture.completedFuture(previousServer);
+            }
+
+            return channelStore.getCurrentChannelAsync(player.getUniqueId())
+                    .thenCompose(currentChannel -> {
+                        String excludedServer = currentChannel != null ? currentChannel : previousServer.getServerInfo().getName();
+                        return groupRegistry.selectServerForGroupAsync(previousGroupResolved.getName(), channelStore,
+                                excludedServer, VelocityLimboHandler.getHealthMonitor());
+                    })
+                    .thenApply(selected -> selected
+                            .flatMap(name -> VelocityLimboHandler.getProxyServer().getServer(name))
+                            .orElse(previousServer));
+        }
+
+        if (channelStore == null || groupRegistry == null) {
+            return CompletableFuture.completedFuture(VelocityLimboHandler.getDirectConnectServer());
         }
 
+        return selectFromLastGroup(player, channelStore, groupRegistry, null)
+                .thenApply(selected -> selected != null ? selected : VelocityLimboHandler.getDirectConnectServer());
+    }
+
+    /**
+     * Select the least populated server of the player's last group, or of the default group
+     * @param player The player to select a server for
+     * @param preload What was looked up at login, or null to read it from the store
+     * @return the selected server, or null if there is none
+     */
+    private CompletableFuture<RegisteredServer> selectFromLastGroup(Player player, AsyncChannelStore channelStore,
+                                                                   ChannelGroupRegistry groupRegistry, LoginPreload preload) {
+        CompletableFuture<String> lastGroupLookup = preload != null
+                ? CompletableFuture.completedFuture(preload.getLastGroup())
+                : channelStore.getLastGroupAsync(player.getUniqueId());
+        CompletableFuture<String> currentChannelLookup = preload != null
+                ? CompletableFuture.completedFuture(preload.getCurrentChannel())
+                : channelStore.getCurrentChannelAsync(player.getUniqueId());
+
+        return lastGroupLookup.thenCombine(currentChannelLookup, (lastGroup, currentChannel) -> {
+                    String groupName = lastGroup != null ? lastGroup : VelocityLimboHandler.getDefaultGroupName();
+                    String excludedServer = player.getCurrentServer()
+                            .map(ServerConnection::getServer)
+                            .map(srv -> srv.getServerInfo().getName())
+                            .orElse(currentChannel);
+                    return new String[]{groupName, excludedServer};
+                })
+                .thenCompose(lookup -> {
+                    if (lookup[0] == null) return CompletableFuture.completedFuture(Optional.<String>empty());
+                    return groupRegistry.selectServerForGroupAsync(lookup[0], channelStore, lookup[1],
+                            VelocityLimboHandler.getHealthMonitor());
+                })
+                .thenApply(selected -> selected
+                        .flatMap(name -> VelocityLimboHandler.getProxyServer().getServer(name))
+                        .orElse(null));
+    }
+
+    @Subscribe
+    public EventTask onDisconnect(@NotNull DisconnectEvent event) {
+        Player player = event.getPlayer();
+        AsyncChannelStore channelStore = VelocityLimboHandler.getChannelStore();
+        ChannelGroupRegistry groupRegistry = VelocityLimboHandler.getChannelGroupRegistry();
+        RegisteredServer currentServer = player.getCurrentServer()
+                .map(ServerConnection::getServer)
+                .orElse(null);
+
         VelocityLimboHandler.getPlayerManager().removePlayer(player);
         VelocityLimboHandler.getPlayerManager().removePlayerIssue(player);
+        // Players that left before pre-connect never took what was preloaded at login
+        VelocityLimboHandler.getPlayerManager().clearPreload(player);
         VelocityLimboHandler.getReconnectBlocker().unblock(player.getUniqueId());
+
+        if (channelStore == null || groupRegistry == null) {
+            // Leaving frees a slot on the backend the player was on
+            VelocityLimboHandler.signalDrain(currentServer);
+            return null;
+        }
+
+        // A connect that never reached post-connect still holds its slot
+        VelocityLimboHandler.releaseReservation(player);
+
+        String fromServer = null;
+        String lastGroup = null;
+        if (currentServer != null) {
+            ChannelGroup group = groupRegistry.getGroupForServer(currentServer.getServerInfo().getName());
+            if (group != null) {
+                fromServer = currentServer.getServerInfo().getName();
+                lastGroup = group.getName();
+            }
+        }
+
+        CompletableFuture<Void> recorded = channelStore.recordTransferAsync(player.getUniqueId(), fromServer, null, null, lastGroup)
+                .exceptionally(throwable -> {
+                    VelocityLimboHandler.getLogger().warning("Failed to record the disconnect of "
+                            + player.getUsername() + ": " + throwable.getMessage());
+                    return null;
+                })
+                // Leaving frees a slot on the backend the player was on
+                .thenRun(() -> VelocityLimboHandler.signalDrain(currentServer));
+        return EventTask.resumeWhenComplete(recorded);
     }
 }
@@ -2,10 +2,21 @@ package com.akselglyholt.velocityLimboHandler.misc;
 
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public final class InMemoryReconnectBlocker implements ReconnectBlocker {
     private static final class Entry { String reason; }
     private final ConcurrentHashMap<UUID, Entry> map = new ConcurrentHashMap<>();
+    private final Consumer<UUID> unblockListener;
+
+    public InMemoryReconnectBlocker() {
+        this(id -> {});
+    }
+
+    // The listener only fires when a block was actually lifted
+    public InMemoryReconnectBlocker(Consumer<UUID> unblockListener) {
+        this.unblockListener = unblockListener;
+    }
 
     @Override public void block(UUID id, String reason) {
         Entry e = new Entry();
@@ -14,7 +25,9 @@ public final class InMemoryReconnectBlocker implements ReconnectBlocker {
     }
 
     @Override public void unblock(UUID id) {
-        map.remove(id);
+        if (map.remove(id) != null) {
+            unblockListener.accept(id);
+        }
     }
 
     @Override public boolean isBlocked(UUID id) {
@@ -0,0 +1,209 @@
+package com.akselglyholt.velocityLimboHandler.misc;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Logger;
+
+/**
+ * Binds to the Maintenance plugin API once and keeps an immutable snapshot of its state.
+ * The methods are resolved into MethodHandles when the adapter is created, and lookups
+ * only read the current snapshot, which is replaced by {@link #refresh(Collection)}.
+ */
+public final class MaintenanceAdapter {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private final Object api;
+    private final Logger logger;
+    private final MethodHandle globalMaintenance;
+    private final MethodHandle serverMaintenanceByName;
+    private final MethodHandle getServer;
+    private final MethodHandle serverMaintenance;
+    private final MethodHandle getSettings;
+    private final MethodHandle getWhitelistedPlayers;
+
+    private final List<Runnable> changeListeners = new CopyOnWriteArrayList<>();
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    public static final class Snapshot {
+        static final Snapshot EMPTY = new Snapshot(false, Set.of(), Set.of());
+
+        private final boolean globalMaintenance;
+        private final Set<String> serversInMaintenance;
+        private final Set<UUID> whitelistedPlayers;
+
+        Snapshot(boolean globalMaintenance, Set<String> serversInMaintenance, Set<UUID> whitelistedPlayers) {
+            this.globalMaintenance = globalMaintenance;
+            this.serversInMaintenance = serversInMaintenance;
+            this.whitelistedPlayers = whitelistedPlayers;
+        }
+
+        public boolean isGlobalMaintenance() {
+            return globalMaintenance;
+        }
+
+        // If proxy is in global maintenance, all servers are in maintenance
+        public boolean isServerInMaintenance(String serverName) {
+            return globalMaintenance || serversInMaintenance.contains(serverName);
+        }
+
+        public boolean isWhitelisted(UUID playerId) {
+            return whitelistedPlayers.contains(playerId);
+        }
+
+        public Set<UUID> getWhitelistedPlayers() {
+            return whitelistedPlayers;
+        }
+
+        boolean sameState(Snapshot other) {
+            return globalMaintenance == other.globalMaintenance
+                    && serversInMaintenance.equals(other.serversInMaintenance)
+                    && whitelistedPlayers.equals(other.whitelistedPlayers);
+        }
+    }
+
+    private MaintenanceAdapter(Object api, Logger logger) throws ReflectiveOperationException {
+        this.api = api;
+        this.logger = logger;
+        Class<?> apiClass = api.getClass();
+
+        this.globalMaintenance = bind(apiClass.getMethod("isMaintenance"), MethodType.methodType(boolean.class, Object.class));
+
+        // Approach 1: direct server name method (if it exists)
+        Method byName = findMethod(apiClass, "isMaintenance", String.class);
+        this.serverMaintenanceByName = byName == null ? null
+                : bind(byName, MethodType.methodType(boolean.class, Object.class, String.class));
+
+        // Approach 2: get the server object first, then ask for its state
+        Method getServerMethod = findMethod(apiClass, "getServer", String.class);
+        Method serverMethod = null;
+        if (getServerMethod != null) {
+            for (Method method : apiClass.getMethods()) {
+                if (method.getName().equals("isMaintenance") && method.getParameterCount() == 1
+                        && method.getParameterTypes()[0].isAssignableFrom(getServerMethod.getReturnType())) {
+                    serverMethod = method;
+                    break;
+                }
+            }
+        }
+        this.getServer = getServerMethod == null ? null
+                : bind(getServerMethod, MethodType.methodType(Object.class, Object.class, String.class));
+        this.serverMaintenance = serverMethod == null ? null
+                : bind(serverMethod, MethodType.methodType(boolean.class, Object.class, Object.class));
+
+        Method settingsMethod = apiClass.getMethod("getSettings");
+        this.getSettings = bind(settingsMethod, MethodType.methodType(Object.class, Object.class));
+        Object settings = settingsMethod.invoke(api);
+        Class<?> settingsClass = settings != null ? settings.getClass() : settingsMethod.getReturnType();
+        this.getWhitelistedPlayers = bind(settingsClass.getMethod("getWhitelistedPlayers"),
+                MethodType.methodType(Object.class, Object.class));
+    }
+
+    /**
+     * Resolve the Maintenance API methods
+     * @param api The instance returned by MaintenanceProvider.get()
+     * @param logger Where to report failures
+     * @return the adapter, or null if the API doesn't have the methods we need
+     */
+    public static MaintenanceAdapter create(Object api, Logger logger) {
+        try {
+            return new MaintenanceAdapter(api, logger);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            logger.warning("Failed to bind to the Maintenance API: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Called after a refresh whenever maintenance mode or the whitelist changed
+    public void addChangeListener(Runnable listener) {
+        changeListeners.add(listener);
+    }
+
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Read the current Maintenance state and publish it as a new snapshot
+     * @param serverNames The servers to check for per-server maintenance
+     */
+    public void refresh(Collection<String> serverNames) {
+        boolean global = false;
+        try {
+            global = (boolean) globalMaintenance.invokeExact(api);
+        } catch (Throwable e) {
+            // Ignore, continue to server-specific check
+        }
+
+        Set<String> servers = new HashSet<>();
+        if (!global) {
+            for (String serverName : serverNames) {
+                if (checkServer(serverName)) servers.add(serverName);
+            }
+        }
+
+        Set<UUID> whitelist = snapshot.getWhitelistedPlayers();
+        try {
+            Object settings = (Object) getSettings.invokeExact(api);
+            Object whitelistMapObj = settings == null ? null : (Object) getWhitelistedPlayers.invokeExact(settings);
+            if (whitelistMapObj instanceof Map<?, ?> whitelistMap) {
+                Set<UUID> players = new HashSet<>();
+                for (Object key : whitelistMap.keySet()) {
+                    if (key instanceof UUID uuid) players.add(uuid);
+                }
+                whitelist = players;
+            }
+        } catch (Throwable e) {
+            logger.warning("Failed to read the Maintenance whitelist: " + e.getMessage());
+        }
+
+        Snapshot previous = snapshot;
+        snapshot = new Snapshot(global, Set.copyOf(servers), Set.copyOf(whitelist));
+
+        if (!snapshot.sameState(previous)) {
+            for (Runnable listener : changeListeners) {
+                listener.run();
+            }
+        }
+    }
+
+    private boolean checkServer(String serverName) {
+        try {
+            if (serverMaintenanceByName != null) {
+                return (boolean) serverMaintenanceByName.invokeExact(api, serverName);
+            }
+            if (getServer == null || serverMaintenance == null) return false;
+
+            Object server = (Object) getServer.invokeExact(api, serverName);
+            // Server not configured in maintenance plugin, assume not in maintenance
+            if (server == null) return false;
+            return (boolean) serverMaintenance.invokeExact(api, server);
+        } catch (Throwable e) {
+            logger.info("Server-specific maintenance check failed for '" + serverName + "': " + e.getMessage());
+            return false;
+        }
+    }
+
+    private static MethodHandle bind(Method method, MethodType type) throws IllegalAccessException {
+        // The API is usually implemented by a class we can't see, so allow access through it
+        method.trySetAccessible();
+        return LOOKUP.unreflect(method).asType(type);
+    }
+
+    private static Method findMethod(Class<?> type, String name, Class<?>... params) {
+        try {
+            return type.getMethod(name, params);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+}
@@ -13,4 +13,13 @@ public class MessageFormatter {
 
         return msg;
     }
+
+    // Use a position that was already looked up, e.g. from a queue snapshot
+    public static String formatMessage(String msg, int position) {
+        if (msg.contains("[queue-position]")) {
+            msg = msg.replace("[queue-position]", Integer.toString(position));
+        }
+
+        return msg;
+    }
 }
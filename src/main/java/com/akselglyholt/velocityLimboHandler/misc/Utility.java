@@ -10,9 +10,7 @@ import net.kyori.adventure.text.minimessage.MiniMessage;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.Map;
 import java.util.Optional;
-import java.util.UUID;
 
 public class Utility {
     private static final MiniMessage miniMessage = MiniMessage.miniMessage();
@@ -70,78 +68,12 @@ public class Utility {
      * @return true if the server is in maintenance, false otherwise
      */
     public static boolean isServerInMaintenance(String serverName) {
-        if (!hasMaintenance()) {
+        MaintenanceAdapter adapter = VelocityLimboHandler.getMaintenanceAdapter();
+        if (!hasMaintenance() || adapter == null) {
             return false; // No maintenance plugin, assume not in maintenance
         }
 
-        try {
-            Object maintenanceAPI = VelocityLimboHandler.getMaintenanceAPI();
-            if (maintenanceAPI == null) {
-                return false;
-            }
-
-            // First check if the entire proxy is in maintenance
-            try {
-                boolean globalMaintenance = (boolean) maintenanceAPI.getClass()
-                        .getMethod("isMaintenance")
-                        .invoke(maintenanceAPI);
-                if (globalMaintenance) {
-                    return true; // If proxy is in global maintenance, all servers are in maintenance
-                }
-            } catch (Exception e) {
-                // Ignore, continue to server-specific check
-            }
-
-            // Now try server-specific maintenance using different approaches
-            try {
-                // Approach 1: Try direct server name method (if it exists)
-                try {
-                    boolean result = (boolean) maintenanceAPI.getClass()
-                            .getMethod("isMaintenance", String.class)
-                            .invoke(maintenanceAPI, serverName);
-                    return result;
-                } catch (NoSuchMethodException e) {
-                    // Method doesn't exist, try server object approach
-                }
-
-                // Approach 2: Get server object first
-                Object server = maintenanceAPI.getClass()
-                        .getMethod("getServer", String.class)
-                        .invoke(maintenanceAPI, serverName);
-
-                if (server == null) {
-                    // Server not configured in maintenance plugin, assume not in maintenance
-                    return false;
-                }
-
-                // Try different method signatures for isMaintenance
-                Class<?> apiClass = maintenanceAPI.getClass();
-                java.lang.reflect.Method[] methods = apiClass.getMethods();
-
-                for (java.lang.reflect.Method method : methods) {
-                    if (method.getName().equals("isMaintenance") &&
-                            method.getParameterCount() == 1) {
-
-                        Class<?> paramType = method.getParameterTypes()[0];
-                        if (paramType.isAssignableFrom(server.getClass())) {
-                            boolean result = (boolean) method.invoke(maintenanceAPI, server);
-                            return result;
-                        }
-                    }
-                }
-
-                // If no suitable method found, return false
-                return false;
-
-            } catch (Exception ex) {
-                VelocityLimboHandler.getLogger().info("Server-specific maintenance check failed for '" + serverName + "': " + ex.getMessage());
-                return false;
-            }
-
-        } catch (Exception e) {
-            VelocityLimboHandler.getLogger().warning("Failed to check maintenance status for server '" + serverName + "': " + e.getMessage());
-            return false; // Assume not in maintenance if check fails
-        }
+        return adapter.getSnapshot().isServerInMaintenance(serverName);
     }
 
     /**
@@ -150,41 +82,24 @@ public class Utility {
      * @return true if whitelisted, otherwise returns false
      */
     public static boolean playerMaintenanceWhitelisted(Player player) {
-        if (!hasMaintenance()) {
+        MaintenanceAdapter adapter = VelocityLimboHandler.getMaintenanceAdapter();
+        if (!hasMaintenance() || adapter == null) {
             return false;
         }
 
-        try {
-            Object maintenanceAPI = VelocityLimboHandler.getMaintenanceAPI();
-            if (maintenanceAPI == null) {
-                return false;
-            }
-
-            // Use reflection to get the settings object
-            Object settings = maintenanceAPI.getClass()
-                    .getMethod("getSettings")
-                    .invoke(maintenanceAPI);
-
-            if (settings == null) {
-                return false;
-            }
-
-            // Use reflection to get the whitelist map
-            java.lang.reflect.Method getWhitelistedPlayersMethod = settings.getClass().getMethod("getWhitelistedPlayers");
-            Object whitelistMapObj = getWhitelistedPlayersMethod.invoke(settings);
-
-            if (!(whitelistMapObj instanceof Map<?,?>)) {
-                return false;
-            }
-
-            @SuppressWarnings("unchecked")
-            Map<UUID, String> whitelistedPlayers = (Map<UUID, String>) whitelistMapObj;
-
-            return whitelistedPlayers.containsKey(player.getUniqueId());
+        return adapter.getSnapshot().isWhitelisted(player.getUniqueId());
+    }
 
-        } catch (Exception e) {
-            VelocityLimboHandler.getLogger().warning("Failed to check if player is whitelisted in Maintenance plugin: " + e.getMessage());
-            return false;
-        }
+    /**
+     * Check if a player may join a server while it's in maintenance
+     * @param player The player to check
+     * @param serverName The server they want to join
+     * @return true if the player has a bypass permission or is whitelisted
+     */
+    public static boolean canBypassMaintenance(Player player, String serverName) {
+        return player.hasPermission("maintenance.admin")
+                || player.hasPermission("maintenance.bypass")
+                || player.hasPermission("maintenance.singleserver.bypass." + serverName)
+                || playerMaintenanceWhitelisted(player);
     }
 }
@@ -0,0 +1,41 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A ChannelStore that can also be used without blocking the calling thread.
+ * Event listeners use these methods so a slow backend doesn't stall Velocity's event threads.
+ */
+public interface AsyncChannelStore extends ChannelStore {
+    CompletableFuture<String> getLastGroupAsync(UUID playerId);
+
+    CompletableFuture<String> getCurrentChannelAsync(UUID playerId);
+
+    /**
+     * @param serverNames The servers to look up
+     * @return the channel count of every server, see {@link #getChannelCounts(Collection)}
+     */
+    CompletableFuture<Map<String, Integer>> getChannelCountsAsync(Collection<String> serverNames);
+
+    /**
+     * Asynchronous {@link #recordTransfer(UUID, String, String, String, String)}
+     * @return completes once the transfer has been written
+     */
+    CompletableFuture<Void> recordTransferAsync(UUID playerId, String fromServer, String toServer,
+                                                String currentChannel, String lastGroup);
+
+    /**
+     * Asynchronous {@link #tryReserveSlot(String, int, long)}
+     * @return completes with the token, or null if the server is full
+     */
+    CompletableFuture<String> tryReserveSlotAsync(String serverName, int limit, long ttlMillis);
+
+    /**
+     * Asynchronous {@link #releaseSlot(String, String)}
+     * @return completes once the reservation was given back
+     */
+    CompletableFuture<Void> releaseSlotAsync(String serverName, String token);
+}
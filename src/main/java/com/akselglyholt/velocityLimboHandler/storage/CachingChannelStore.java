@@ -0,0 +1,397 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * Keeps channel counts in memory in front of another store.
+ * Local increments and decrements are applied right away and flushed to the store in the background,
+ * and the store's totals are read back on every refresh. Counts older than the max staleness
+ * are read through from the store instead of being served from memory.
+ */
+public class CachingChannelStore implements AsyncChannelStore {
+    private final AsyncChannelStore delegate;
+    private final Logger logger;
+    private final long maxStalenessMillis;
+    private final Map<String, CountEntry> counts = new ConcurrentHashMap<>();
+    private final AtomicBoolean refreshing = new AtomicBoolean();
+    // Reservations to give back once the counts recorded before them have been flushed, as server and token
+    private final Queue<String[]> pendingReleases = new ConcurrentLinkedQueue<>();
+    // Numbers every flush, so a read knows which flushed changes it already includes
+    private final AtomicLong flushGenerations = new AtomicLong();
+    private final ExecutorService executor;
+
+    // The cached count of a single server
+    private static final class CountEntry {
+        private int remote;
+        // Local changes not sent to the store yet
+        private int pending;
+        // Local changes sent to the store by flush generation, until a read that includes them comes back
+        private final Map<Long, Integer> flushing = new HashMap<>();
+        // The newest flush generation whose change has reached the store
+        private long applied;
+        // The applied generation the current remote value was read after
+        private long remoteGeneration;
+        private long refreshedAt;
+
+        synchronized int value() {
+            int inFlight = 0;
+            for (int delta : flushing.values()) {
+                inFlight += delta;
+            }
+            return Math.max(0, remote + inFlight + pending);
+        }
+
+        synchronized int add(int delta) {
+            pending += delta;
+            return value();
+        }
+
+        synchronized int takePending(long generation) {
+            int delta = pending;
+            pending = 0;
+            if (delta != 0) flushing.put(generation, delta);
+            return delta;
+        }
+
+        synchronized void applied(long generation) {
+            applied = Math.max(applied, generation);
+        }
+
+        synchronized void restore(long generation) {
+            Integer delta = flushing.remove(generation);
+            if (delta != null) pending += delta;
+        }
+
+        // Captured before a read, everything flushed up to here is included in what the read returns
+        synchronized long appliedGeneration() {
+            return applied;
+        }
+
+        synchronized void refreshed(int remoteValue, long now, long coveredGeneration) {
+            // A read that started before the current value's read came back late
+            if (coveredGeneration < remoteGeneration) return;
+            remote = remoteValue;
+            remoteGeneration = coveredGeneration;
+            flushing.keySet().removeIf(generation -> generation <= coveredGeneration);
+            refreshedAt = now;
+        }
+
+        synchronized boolean isFresh(long now, long maxStalenessMillis) {
+            return refreshedAt > 0 && now - refreshedAt <= maxStalenessMillis;
+        }
+    }
+
+    public CachingChannelStore(AsyncChannelStore delegate, Logger logger, long maxStalenessMillis) {
+        this.delegate = delegate;
+        this.logger = logger;
+        this.maxStalenessMillis = maxStalenessMillis;
+        // Flushes block on the store, so they get a thread of their own instead of the common pool
+        this.executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "VelocityLimboHandler channel cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Load the given servers and keep flushing and refreshing them
+     * @param proxyServer The proxy whose scheduler runs the refresh
+     * @param plugin The plugin instance owning the task
+     * @param serverNames The servers to keep in memory, others are added when they're first read
+     * @param intervalMillis How often local changes are flushed and counts are refreshed
+     */
+    public void start(ProxyServer proxyServer, Object plugin, Collection<String> serverNames, long intervalMillis) {
+        Map<String, Integer> initial = delegate.getChannelCounts(serverNames);
+        long now = System.currentTimeMillis();
+        for (String serverName : serverNames) {
+            entry(serverName).refreshed(initial.getOrDefault(serverName, 0), now, 0);
+        }
+
+        proxyServer.getScheduler().buildTask(plugin, this::flushAndRefresh)
+                .repeat(intervalMillis, TimeUnit.MILLISECONDS)
+                .schedule();
+    }
+
+    /**
+     * Send local changes to the store, then read the totals back
+     * @return completes once the counts were refreshed
+     */
+    public CompletableFuture<Void> flushAndRefresh() {
+        // Skip the tick if the previous one hasn't finished
+        if (!refreshing.compareAndSet(false, true)) return CompletableFuture.completedFuture(null);
+
+        List<String> serverNames = new ArrayList<>(counts.keySet());
+        Map<String, Long> covered = new HashMap<>();
+        CompletableFuture<Void> flushed;
+        try {
+            flushed = CompletableFuture.runAsync(this::flush, executor);
+        } catch (RejectedExecutionException e) {
+            // Closed already
+            refreshing.set(false);
+            return CompletableFuture.completedFuture(null);
+        }
+        return flushed
+                .thenCompose(ignored -> {
+                    for (String serverName : serverNames) {
+                        covered.put(serverName, entry(serverName).appliedGeneration());
+                    }
+                    return delegate.getChannelCountsAsync(serverNames);
+                })
+                .thenAccept(remote -> {
+                    long now = System.currentTimeMillis();
+                    for (String serverName : serverNames) {
+                        entry(serverName).refreshed(remote.getOrDefault(serverName, 0), now, covered.get(serverName));
+                    }
+                })
+                .whenComplete((ignored, throwable) -> {
+                    refreshing.set(false);
+                    if (throwable != null) {
+                        logger.warning("Failed to refresh cached channel counts: " + throwable.getMessage());
+                    }
+                });
+    }
+
+    private void flush() {
+        // Only the releases queued so far, their counts are among the changes sent below
+        int releases = pendingReleases.size();
+        long generation = flushGenerations.incrementAndGet();
+        for (Map.Entry<String, CountEntry> entry : counts.entrySet()) {
+            int delta = entry.getValue().takePending(generation);
+            if (delta == 0) continue;
+            try {
+                delegate.adjustChannelCount(entry.getKey(), delta);
+                entry.getValue().applied(generation);
+            } catch (RuntimeException e) {
+                // Try again on the next flush
+                entry.getValue().restore(generation);
+                logger.warning("Failed to flush channel count of " + entry.getKey() + ": " + e.getMessage());
+            }
+        }
+
+        for (int i = 0; i < releases; i++) {
+            String[] release = pendingReleases.poll();
+            if (release == null) break;
+            try {
+                delegate.releaseSlot(release[0], release[1]);
+            } catch (RuntimeException e) {
+                // The reservation runs out on its own
+                logger.warning("Failed to release a slot on " + release[0] + ": " + e.getMessage());
+            }
+        }
+    }
+
+    private CountEntry entry(String serverName) {
+        return counts.computeIfAbsent(serverName, name -> new CountEntry());
+    }
+
+    // Read a count from the store if the cached one is too old
+    private int readCount(String serverName) {
+        CountEntry entry = entry(serverName);
+        long now = System.currentTimeMillis();
+        if (!entry.isFresh(now, maxStalenessMillis)) {
+            long covered = entry.appliedGeneration();
+            entry.refreshed(delegate.getChannelCount(serverName), now, covered);
+        }
+        return entry.value();
+    }
+
+    @Override
+    public String getLastGroup(UUID playerId) {
+        return delegate.getLastGroup(playerId);
+    }
+
+    @Override
+    public void setLastGroup(UUID playerId, String groupName) {
+        delegate.setLastGroup(playerId, groupName);
+    }
+
+    @Override
+    public void clearLastGroup(UUID playerId) {
+        delegate.clearLastGroup(playerId);
+    }
+
+    @Override
+    public int incrementChannelCount(String serverName) {
+        return entry(serverName).add(1);
+    }
+
+    @Override
+    public int decrementChannelCount(String serverName) {
+        return entry(serverName).add(-1);
+    }
+
+    @Override
+    public int adjustChannelCount(String serverName, int delta) {
+        return entry(serverName).add(delta);
+    }
+
+    @Override
+    public int getChannelCount(String serverName) {
+        return readCount(serverName);
+    }
+
+    @Override
+    public Map<String, Integer> getChannelCounts(Collection<String> serverNames) {
+        Map<String, Integer> result = new HashMap<>();
+        for (String serverName : serverNames) {
+            result.put(serverName, readCount(serverName));
+        }
+        return result;
+    }
+
+    // Reservations have to be checked against every proxy, so they always go to the store.
+    // A release waits for the next flush, until then the player's join is only counted here
+
+    @Override
+    public String tryReserveSlot(String serverName, int limit, long ttlMillis) {
+        return delegate.tryReserveSlot(serverName, limit, ttlMillis);
+    }
+
+    @Override
+    public void releaseSlot(String serverName, String token) {
+        if (token == null) return;
+        pendingReleases.add(new String[]{serverName, token});
+    }
+
+    @Override
+    public CompletableFuture<String> tryReserveSlotAsync(String serverName, int limit, long ttlMillis) {
+        return delegate.tryReserveSlotAsync(serverName, limit, ttlMillis);
+    }
+
+    @Override
+    public CompletableFuture<Void> releaseSlotAsync(String serverName, String token) {
+        releaseSlot(serverName, token);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public String getCurrentChannel(UUID playerId) {
+        return delegate.getCurrentChannel(playerId);
+    }
+
+    @Override
+    public void setCurrentChannel(UUID playerId, String serverName) {
+        delegate.setCurrentChannel(playerId, serverName);
+    }
+
+    @Override
+    public void clearCurrentChannel(UUID playerId) {
+        delegate.clearCurrentChannel(playerId);
+    }
+
+    @Override
+    public void storeGroups(Iterable<String> groupNames) {
+        delegate.storeGroups(groupNames);
+    }
+
+    @Override
+    public void storeGroupServers(String groupName, Iterable<String> servers) {
+        delegate.storeGroupServers(groupName, servers);
+    }
+
+    @Override
+    public void storeGroupMaxPlayers(String groupName, int maxPlayers) {
+        delegate.storeGroupMaxPlayers(groupName, maxPlayers);
+    }
+
+    @Override
+    public void storeGroupLayout(Map<String, List<String>> groupServers, Map<String, Integer> groupMaxPlayers) {
+        delegate.storeGroupLayout(groupServers, groupMaxPlayers);
+    }
+
+    @Override
+    public void recordTransfer(UUID playerId, String fromServer, String toServer, String currentChannel, String lastGroup) {
+        if (fromServer != null) entry(fromServer).add(-1);
+        if (toServer != null) entry(toServer).add(1);
+        delegate.recordTransfer(playerId, null, null, currentChannel, lastGroup);
+    }
+
+    @Override
+    public void recordShutdown(Collection<ChannelDeparture> departures) {
+        // Local changes go out first, the departures would otherwise be floored before the joins arrive
+        flush();
+        delegate.recordShutdown(departures);
+    }
+
+    @Override
+    public CompletableFuture<String> getLastGroupAsync(UUID playerId) {
+        return delegate.getLastGroupAsync(playerId);
+    }
+
+    @Override
+    public CompletableFuture<String> getCurrentChannelAsync(UUID playerId) {
+        return delegate.getCurrentChannelAsync(playerId);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Integer>> getChannelCountsAsync(Collection<String> serverNames) {
+        long now = System.currentTimeMillis();
+        List<String> stale = new ArrayList<>();
+        Map<String, Long> covered = new HashMap<>();
+        for (String serverName : serverNames) {
+            CountEntry entry = entry(serverName);
+            if (!entry.isFresh(now, maxStalenessMillis)) {
+                stale.add(serverName);
+                covered.put(serverName, entry.appliedGeneration());
+            }
+        }
+
+        // Served from memory unless something is older than the max staleness
+        CompletableFuture<Void> loaded = stale.isEmpty()
+                ? CompletableFuture.completedFuture(null)
+                : delegate.getChannelCountsAsync(stale).thenAccept(remote -> {
+                    long readAt = System.currentTimeMillis();
+                    for (String serverName : stale) {
+                        entry(serverName).refreshed(remote.getOrDefault(serverName, 0), readAt, covered.get(serverName));
+                    }
+                });
+
+        return loaded.thenApply(ignored -> {
+            Map<String, Integer> result = new HashMap<>();
+            for (String serverName : serverNames) {
+                result.put(serverName, entry(serverName).value());
+            }
+            return result;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> recordTransferAsync(UUID playerId, String fromServer, String toServer,
+                                                       String currentChannel, String lastGroup) {
+        if (fromServer != null) entry(fromServer).add(-1);
+        if (toServer != null) entry(toServer).add(1);
+        return delegate.recordTransferAsync(playerId, null, null, currentChannel, lastGroup);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) executor.shutdownNow();
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        // Local changes would otherwise be lost
+        flush();
+        delegate.close();
+    }
+}
@@ -0,0 +1,155 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps consent in memory in front of another store.
+ * Players known to have consented are kept for good, players known not to have consented
+ * are kept in a bounded cache that forgets the least recently used ones and expires entries after a while.
+ * Writes go to the store first and then update the cache, so the store is only read on a miss.
+ */
+public class CachingConsentStore implements ConsentStore {
+    private final ConsentStore delegate;
+    private final long negativeTtlMillis;
+    private final UuidSet consented = new UuidSet();
+    // Player to the time they were found not to have consented, in least recently used order
+    private final Map<UUID, Long> notConsented;
+    // Bumped once a write has reached the store, a read that overlapped it doesn't get cached
+    private final AtomicLong writes = new AtomicLong();
+    // Held while bumping writes and updating the cache, so a stale read can't be cached after a newer write
+    private final Object cacheLock = new Object();
+    // Set once every consented player was loaded and this proxy is the store's only writer
+    private volatile boolean complete;
+
+    /**
+     * @param delegate The store to read through and write through to
+     * @param negativeSize The most players to remember as not consented
+     * @param negativeTtlMillis How long a player is remembered as not consented, 0 or less for no expiry
+     */
+    public CachingConsentStore(ConsentStore delegate, int negativeSize, long negativeTtlMillis) {
+        this.delegate = delegate;
+        this.negativeTtlMillis = negativeTtlMillis;
+        int maxSize = Math.max(1, negativeSize);
+        this.notConsented = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, Long> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Remember players as consented without reading the store, e.g. when loading it in bulk at startup
+     * @param playerIds The players that have consented
+     */
+    public void loadConsented(Collection<UUID> playerIds) {
+        consented.addAll(playerIds);
+    }
+
+    /**
+     * Treat every player not cached as consented as not having consented, so the store is never read.
+     * Only safe once every consented player was loaded, and as long as no one else writes to the store.
+     */
+    public void markComplete() {
+        complete = true;
+    }
+
+    @Override
+    public boolean hasConsent(UUID playerId) {
+        if (consented.contains(playerId)) return true;
+        if (complete) return false;
+
+        long now = System.currentTimeMillis();
+        synchronized (notConsented) {
+            Long cachedAt = notConsented.get(playerId);
+            if (cachedAt != null) {
+                if (negativeTtlMillis <= 0 || now - cachedAt < negativeTtlMillis) return false;
+                notConsented.remove(playerId);
+            }
+        }
+
+        long writesBefore = writes.get();
+        boolean result = delegate.hasConsent(playerId);
+        synchronized (cacheLock) {
+            if (writes.get() == writesBefore) {
+                remember(playerId, result, now);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void setConsent(UUID playerId, boolean consented) {
+        delegate.setConsent(playerId, consented);
+        // Bumped after the write, a read that began before it landed may have seen the old value
+        synchronized (cacheLock) {
+            writes.incrementAndGet();
+            remember(playerId, consented, System.currentTimeMillis());
+        }
+    }
+
+    @Override
+    public void setConsents(Map<UUID, Boolean> changes) {
+        delegate.setConsents(changes);
+        long now = System.currentTimeMillis();
+        synchronized (cacheLock) {
+            writes.incrementAndGet();
+            for (Map.Entry<UUID, Boolean> change : changes.entrySet()) {
+                remember(change.getKey(), change.getValue(), now);
+            }
+        }
+    }
+
+    /**
+     * Forget what's cached about a player, e.g. after another proxy changed their consent
+     * @param playerId The player to read from the store again
+     */
+    public void invalidate(UUID playerId) {
+        // A read that's in flight may have seen the old value, so it must not be cached either
+        synchronized (cacheLock) {
+            writes.incrementAndGet();
+            consented.remove(playerId);
+            synchronized (notConsented) {
+                notConsented.remove(playerId);
+            }
+        }
+    }
+
+    /**
+     * Forget everything that's cached, e.g. after changes from other proxies may have been missed
+     */
+    public void invalidateAll() {
+        synchronized (cacheLock) {
+            writes.incrementAndGet();
+            complete = false;
+            consented.clear();
+            synchronized (notConsented) {
+                notConsented.clear();
+            }
+        }
+    }
+
+    private void remember(UUID playerId, boolean hasConsented, long now) {
+        if (hasConsented) {
+            consented.add(playerId);
+            synchronized (notConsented) {
+                notConsented.remove(playerId);
+            }
+        } else {
+            // Removing takes the set's write lock, so skip it for players that aren't in there
+            if (consented.contains(playerId)) consented.remove(playerId);
+            synchronized (notConsented) {
+                notConsented.put(playerId, now);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+}
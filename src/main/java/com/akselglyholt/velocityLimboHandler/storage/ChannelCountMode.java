@@ -0,0 +1,24 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import java.util.Locale;
+
+/**
+ * How the Redis stores keep channel counts
+ */
+public enum ChannelCountMode {
+    // One counter per server, shared by every proxy
+    SHARED,
+    // Every proxy owns its contribution under its own expiring key, totals are the sum of the live ones
+    LEASED,
+    // One hash per server with a field per proxy, so proxies don't all write the same key
+    SHARDED;
+
+    public static ChannelCountMode fromConfig(String value) {
+        if (value == null) return SHARED;
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return SHARED;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import java.util.UUID;
+
+/**
+ * A player leaving the channels when the proxy shuts down
+ */
+public final class ChannelDeparture {
+    private final UUID playerId;
+    private final String fromServer;
+    private final String lastGroup;
+
+    /**
+     * @param playerId The player that's leaving
+     * @param fromServer The server whose count should go down, or null
+     * @param lastGroup The player's last group, or null to leave it as is
+     */
+    public ChannelDeparture(UUID playerId, String fromServer, String lastGroup) {
+        this.playerId = playerId;
+        this.fromServer = fromServer;
+        this.lastGroup = lastGroup;
+    }
+
+    public UUID getPlayerId() {
+        return playerId;
+    }
+
+    public String getFromServer() {
+        return fromServer;
+    }
+
+    public String getLastGroup() {
+        return lastGroup;
+    }
+}
@@ -1,5 +1,9 @@
 package com.akselglyholt.velocityLimboHandler.storage;
 
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 public interface ChannelStore extends AutoCloseable {
@@ -27,6 +31,96 @@ public interface ChannelStore extends AutoCloseable {
 
     void storeGroupMaxPlayers(String groupName, int maxPlayers);
 
+    // Batch operations. The defaults make one call per key, remote stores should do them in one round trip.
+
+    /**
+     * @param serverNames The servers to look up
+     * @return the channel count of every server, servers without a count map to 0
+     */
+    default Map<String, Integer> getChannelCounts(Collection<String> serverNames) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String serverName : serverNames) {
+            counts.put(serverName, getChannelCount(serverName));
+        }
+        return counts;
+    }
+
+    /**
+     * Add a delta to a server's channel count, never going below 0
+     * @param serverName The server whose count should change
+     * @param delta The amount to add, may be negative
+     * @return the new count
+     */
+    default int adjustChannelCount(String serverName, int delta) {
+        int count = getChannelCount(serverName);
+        for (int i = 0; i < delta; i++) count = incrementChannelCount(serverName);
+        for (int i = 0; i > delta; i--) count = decrementChannelCount(serverName);
+        return count;
+    }
+
+    /**
+     * Record a player moving between servers as one batch
+     * @param playerId The player that moved
+     * @param fromServer The server whose count should go down, or null
+     * @param toServer The server whose count should go up, or null
+     * @param currentChannel The player's new current channel, or null to clear it
+     * @param lastGroup The player's new last group, or null to leave it as is
+     */
+    default void recordTransfer(UUID playerId, String fromServer, String toServer, String currentChannel, String lastGroup) {
+        if (fromServer != null) decrementChannelCount(fromServer);
+        if (toServer != null) incrementChannelCount(toServer);
+        if (currentChannel == null) {
+            clearCurrentChannel(playerId);
+        } else {
+            setCurrentChannel(playerId, currentChannel);
+        }
+        if (lastGroup != null) setLastGroup(playerId, lastGroup);
+    }
+
+    /**
+     * Record every player of this proxy leaving at once, when it shuts down.
+     * The default records one transfer per player, remote stores should write everything as one batch.
+     * @param departures One departure per player, the current channel of each is cleared
+     */
+    default void recordShutdown(Collection<ChannelDeparture> departures) {
+        for (ChannelDeparture departure : departures) {
+            recordTransfer(departure.getPlayerId(), departure.getFromServer(), null, null, departure.getLastGroup());
+        }
+    }
+
+    /**
+     * Reserve a slot on a server, if its count plus the live reservations is still under the limit.
+     * The default checks the count only and isn't atomic, remote stores should check and reserve in one step.
+     * @param serverName The server to reserve a slot on
+     * @param limit The most players the server may have
+     * @param ttlMillis How long the reservation holds if it's never released
+     * @return a token for {@link #releaseSlot(String, String)}, or null if the server is full
+     */
+    default String tryReserveSlot(String serverName, int limit, long ttlMillis) {
+        return getChannelCount(serverName) < limit ? UUID.randomUUID().toString() : null;
+    }
+
+    /**
+     * Give back a reservation, once the player either joined and was counted or failed to join
+     * @param serverName The server the slot was reserved on
+     * @param token The token returned by {@link #tryReserveSlot(String, int, long)}
+     */
+    default void releaseSlot(String serverName, String token) {
+    }
+
+    /**
+     * Replace the stored group layout in one go
+     * @param groupServers The servers of every group
+     * @param groupMaxPlayers The player limit of every group
+     */
+    default void storeGroupLayout(Map<String, List<String>> groupServers, Map<String, Integer> groupMaxPlayers) {
+        storeGroups(groupServers.keySet());
+        for (Map.Entry<String, List<String>> entry : groupServers.entrySet()) {
+            storeGroupServers(entry.getKey(), entry.getValue());
+            storeGroupMaxPlayers(entry.getKey(), groupMaxPlayers.getOrDefault(entry.getKey(), 0));
+        }
+    }
+
     @Override
     default void close() {
     }
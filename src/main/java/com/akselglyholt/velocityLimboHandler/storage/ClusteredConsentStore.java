@@ -0,0 +1,122 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+/**
+ * Consent shared by every proxy of a network.
+ * The consent set in Redis is the source of truth, each proxy keeps a local cache in front of it.
+ * A proxy that changes consent publishes the players it changed, and every other proxy drops them from its cache,
+ * so a player who consented on one proxy isn't prompted again on another.
+ */
+public class ClusteredConsentStore implements ConsentStore {
+    private static final String INVALIDATE_CHANNEL = "consent:invalidate";
+
+    private final ConsentStore remote;
+    private final CachingConsentStore cache;
+    private final ConsentMessenger messenger;
+    private final String proxyId;
+    private final Logger logger;
+
+    /**
+     * @param remote The store holding the shared consent set
+     * @param messenger Carries the changed players to the other proxies
+     * @param proxyId This proxy's id, so it can ignore its own messages
+     * @param logger The logger failed publishes are reported to
+     * @param negativeSize The most players to remember as not consented
+     * @param negativeTtlMillis How long a player is remembered as not consented, 0 or less for no expiry
+     */
+    public ClusteredConsentStore(ConsentStore remote, ConsentMessenger messenger, String proxyId, Logger logger,
+                                 int negativeSize, long negativeTtlMillis) {
+        this.remote = remote;
+        this.cache = new CachingConsentStore(remote, negativeSize, negativeTtlMillis);
+        this.messenger = messenger;
+        this.proxyId = proxyId;
+        this.logger = logger;
+        // Anything published while the subscription was down was missed, so nothing cached can be trusted
+        messenger.subscribe(this::onInvalidate, cache::invalidateAll);
+    }
+
+    /**
+     * @param keyPrefix The key prefix of the network, or blank
+     * @return the channel consent changes are sent on
+     */
+    public static String invalidationChannel(String keyPrefix) {
+        return keyPrefix == null || keyPrefix.isBlank() ? INVALIDATE_CHANNEL : keyPrefix + ":" + INVALIDATE_CHANNEL;
+    }
+
+    @Override
+    public boolean hasConsent(UUID playerId) {
+        return cache.hasConsent(playerId);
+    }
+
+    @Override
+    public void setConsent(UUID playerId, boolean consented) {
+        cache.setConsent(playerId, consented);
+        publish(List.of(playerId));
+    }
+
+    @Override
+    public void setConsents(Map<UUID, Boolean> changes) {
+        if (changes.isEmpty()) return;
+        cache.setConsents(changes);
+        publish(changes.keySet());
+    }
+
+    /**
+     * Copy every player that consented in a local SQLite store into the shared set, batch by batch
+     * @param source The local store to read from
+     * @param batchSize How many players are written at a time
+     * @return how many players were copied
+     */
+    public long importFrom(LocalSqliteConsentStore source, int batchSize) throws SQLException {
+        return source.forEachConsented(batchSize, batch -> {
+            Map<UUID, Boolean> changes = new HashMap<>();
+            for (UUID playerId : batch) {
+                changes.put(playerId, true);
+            }
+            // Straight to Redis, the local cache would otherwise fill up with the whole file
+            remote.setConsents(changes);
+            publish(batch);
+        });
+    }
+
+    // The message is this proxy's id followed by the changed players, one per line
+    private void publish(Collection<UUID> playerIds) {
+        StringBuilder message = new StringBuilder(proxyId);
+        for (UUID playerId : playerIds) {
+            message.append('\n').append(playerId);
+        }
+        try {
+            messenger.publish(message.toString());
+        } catch (IOException e) {
+            logger.warning("Failed to publish consent changes: " + e.getMessage());
+        }
+    }
+
+    private void onInvalidate(String message) {
+        String[] lines = message.split("\n");
+        // Our own changes are already in the cache
+        if (lines.length == 0 || lines[0].equals(proxyId)) return;
+
+        for (int i = 1; i < lines.length; i++) {
+            try {
+                cache.invalidate(UUID.fromString(lines[i]));
+            } catch (IllegalArgumentException e) {
+                logger.warning("Ignoring malformed consent invalidation: " + lines[i]);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        messenger.close();
+        cache.close();
+    }
+}
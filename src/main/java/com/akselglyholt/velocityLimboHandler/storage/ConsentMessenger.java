@@ -0,0 +1,22 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Carries consent changes between the proxies of a network
+ */
+public interface ConsentMessenger extends AutoCloseable {
+    /**
+     * Start receiving messages, called once
+     * @param listener Called with every message, including the ones this proxy sent
+     * @param onResubscribe Called when messages may have been missed, if the transport can tell
+     */
+    void subscribe(Consumer<String> listener, Runnable onResubscribe);
+
+    void publish(String message) throws IOException;
+
+    @Override
+    default void close() {
+    }
+}
@@ -1,5 +1,6 @@
 package com.akselglyholt.velocityLimboHandler.storage;
 
+import java.util.Map;
 import java.util.UUID;
 
 public interface ConsentStore extends AutoCloseable {
@@ -7,6 +8,16 @@ public interface ConsentStore extends AutoCloseable {
 
     void setConsent(UUID playerId, boolean consented);
 
+    /**
+     * Write several consent changes at once, remote and disk stores should commit them as one batch
+     * @param changes Whether each player consented
+     */
+    default void setConsents(Map<UUID, Boolean> changes) {
+        for (Map.Entry<UUID, Boolean> change : changes.entrySet()) {
+            setConsent(change.getKey(), change.getValue());
+        }
+    }
+
     @Override
     default void close() {
     }
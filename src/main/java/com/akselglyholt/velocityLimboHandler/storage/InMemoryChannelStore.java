@@ -1,16 +1,20 @@
 package com.akselglyholt.velocityLimboHandler.storage;
 
+import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public class InMemoryChannelStore implements ChannelStore {
+public class InMemoryChannelStore implements AsyncChannelStore {
     private final Map<UUID, String> lastGroups = new ConcurrentHashMap<>();
     private final Map<String, AtomicInteger> channelCounts = new ConcurrentHashMap<>();
     private final Map<UUID, String> currentChannels = new ConcurrentHashMap<>();
     private final Map<String, String[]> groupServers = new ConcurrentHashMap<>();
     private final Map<String, Integer> groupMaxPlayers = new ConcurrentHashMap<>();
+    // Token to expiry time of the reserved slots on every server
+    private final Map<String, Map<String, Long>> reservations = new ConcurrentHashMap<>();
 
     @Override
     public String getLastGroup(UUID playerId) {
@@ -48,12 +52,41 @@ public class InMemoryChannelStore implements ChannelStore {
         return next;
     }
 
+    @Override
+    public int adjustChannelCount(String serverName, int delta) {
+        return channelCounts.computeIfAbsent(serverName, key -> new AtomicInteger(0))
+                .updateAndGet(count -> Math.max(0, count + delta));
+    }
+
     @Override
     public int getChannelCount(String serverName) {
         AtomicInteger counter = channelCounts.get(serverName);
         return counter == null ? 0 : counter.get();
     }
 
+    @Override
+    public String tryReserveSlot(String serverName, int limit, long ttlMillis) {
+        Map<String, Long> reserved = reservations.computeIfAbsent(serverName, key -> new java.util.HashMap<>());
+        synchronized (reserved) {
+            long now = System.currentTimeMillis();
+            reserved.values().removeIf(expiresAt -> expiresAt <= now);
+            if (getChannelCount(serverName) + reserved.size() >= limit) return null;
+
+            String token = UUID.randomUUID().toString();
+            reserved.put(token, now + Math.max(1, ttlMillis));
+            return token;
+        }
+    }
+
+    @Override
+    public void releaseSlot(String serverName, String token) {
+        Map<String, Long> reserved = reservations.get(serverName);
+        if (reserved == null || token == null) return;
+        synchronized (reserved) {
+            reserved.remove(token);
+        }
+    }
+
     @Override
     public String getCurrentChannel(UUID playerId) {
         return currentChannels.get(playerId);
@@ -89,6 +122,41 @@ public class InMemoryChannelStore implements ChannelStore {
         groupMaxPlayers.put(groupName, maxPlayers);
     }
 
+    // Everything is in memory, so the async variants complete right away
+
+    @Override
+    public CompletableFuture<String> getLastGroupAsync(UUID playerId) {
+        return CompletableFuture.completedFuture(getLastGroup(playerId));
+    }
+
+    @Override
+    public CompletableFuture<String> getCurrentChannelAsync(UUID playerId) {
+        return CompletableFuture.completedFuture(getCurrentChannel(playerId));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Integer>> getChannelCountsAsync(Collection<String> serverNames) {
+        return CompletableFuture.completedFuture(getChannelCounts(serverNames));
+    }
+
+    @Override
+    public CompletableFuture<Void> recordTransferAsync(UUID playerId, String fromServer, String toServer,
+                                                       String currentChannel, String lastGroup) {
+        recordTransfer(playerId, fromServer, toServer, currentChannel, lastGroup);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    public CompletableFuture<String> tryReserveSlotAsync(String serverName, int limit, long ttlMillis) {
+        return CompletableFuture.completedFuture(tryReserveSlot(serverName, limit, ttlMillis));
+    }
+
+    @Override
+    public CompletableFuture<Void> releaseSlotAsync(String serverName, String token) {
+        releaseSlot(serverName, token);
+        return CompletableFuture.completedFuture(null);
+    }
+
     private java.util.Set<String> asSet(Iterable<String> values) {
         java.util.Set<String> set = new java.util.HashSet<>();
         if (values == null) return set;
@@ -1,11 +1,9 @@
 package com.akselglyholt.velocityLimboHandler.storage;
 
-import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class InMemoryConsentStore implements ConsentStore {
-    private final Set<UUID> consentedPlayers = ConcurrentHashMap.newKeySet();
+    private final UuidSet consentedPlayers = new UuidSet();
 
     @Override
     public boolean hasConsent(UUID playerId) {
@@ -1,13 +1,12 @@
 package com.akselglyholt.velocityLimboHandler.storage;
 
 import java.util.Map;
-import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class InMemoryDataStore implements DataStore {
-    private final Set<UUID> consentedPlayers = ConcurrentHashMap.newKeySet();
+    private final UuidSet consentedPlayers = new UuidSet();
     private final Map<UUID, String> lastGroups = new ConcurrentHashMap<>();
     private final Map<String, AtomicInteger> channelCounts = new ConcurrentHashMap<>();
 
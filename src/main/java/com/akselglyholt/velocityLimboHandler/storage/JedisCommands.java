@@ -0,0 +1,206 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * The Redis commands the ValioBungee stores use, bound to a concrete Jedis client class.
+ * Jedis is only reachable through the ValioBungee summoner, so the methods are looked up by name,
+ * but only once per class: the resolved MethodHandles are cached and reused for every call.
+ * The same adapter works on pipelines and on pipeline responses, which are just other client classes.
+ */
+final class JedisCommands {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final ClassValue<JedisCommands> CACHE = new ClassValue<>() {
+        @Override
+        protected JedisCommands computeValue(Class<?> type) {
+            return new JedisCommands(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final MethodHandle get;
+    private final MethodHandle set;
+    private final MethodHandle incr;
+    private final MethodHandle decr;
+    private final MethodHandle incrBy;
+    private final MethodHandle del;
+    private final MethodHandle sadd;
+    private final MethodHandle srem;
+    private final MethodHandle sismember;
+    private final MethodHandle rpush;
+    private final MethodHandle hset;
+    private final MethodHandle mget;
+    private final MethodHandle hgetAll;
+    private final MethodHandle smembers;
+    private final MethodHandle expire;
+    private final MethodHandle eval;
+    private final MethodHandle zrem;
+    private final MethodHandle hvals;
+    private final MethodHandle hdel;
+    private final MethodHandle pipelined;
+    private final MethodHandle sync;
+    private final MethodHandle responseGet;
+
+    private JedisCommands(Class<?> type) {
+        this.type = type;
+        MethodType unary = MethodType.methodType(Object.class, Object.class, String.class);
+        MethodType binary = MethodType.methodType(Object.class, Object.class, String.class, String.class);
+        MethodType members = MethodType.methodType(Object.class, Object.class, String.class, String[].class);
+
+        this.get = bind(type, "get", unary, String.class);
+        this.set = bind(type, "set", binary, String.class, String.class);
+        this.incr = bind(type, "incr", unary, String.class);
+        this.decr = bind(type, "decr", unary, String.class);
+        this.incrBy = bind(type, "incrBy", MethodType.methodType(Object.class, Object.class, String.class, long.class),
+                String.class, long.class);
+        this.sadd = bind(type, "sadd", members, String.class, String[].class);
+        this.srem = bind(type, "srem", members, String.class, String[].class);
+        this.sismember = bind(type, "sismember", binary, String.class, String.class);
+        this.rpush = bind(type, "rpush", members, String.class, String[].class);
+        this.hset = bind(type, "hset", MethodType.methodType(Object.class, Object.class, String.class, String.class, String.class),
+                String.class, String.class, String.class);
+        this.mget = bind(type, "mget", MethodType.methodType(Object.class, Object.class, String[].class), String[].class);
+        this.hgetAll = bind(type, "hgetAll", unary, String.class);
+        this.smembers = bind(type, "smembers", unary, String.class);
+        this.eval = bind(type, "eval", MethodType.methodType(Object.class, Object.class, String.class, List.class, List.class),
+                String.class, List.class, List.class);
+        this.zrem = bind(type, "zrem", members, String.class, String[].class);
+        this.hvals = bind(type, "hvals", unary, String.class);
+        this.hdel = bind(type, "hdel", members, String.class, String[].class);
+        this.pipelined = bind(type, "pipelined", MethodType.methodType(Object.class, Object.class));
+        this.sync = bind(type, "sync", MethodType.methodType(void.class, Object.class));
+        this.responseGet = bind(type, "get", MethodType.methodType(Object.class, Object.class));
+
+        // Prefer the single key variant, otherwise collect the key into the varargs one
+        MethodHandle singleDel = bind(type, "del", unary, String.class);
+        MethodHandle multiDel = bind(type, "del", MethodType.methodType(Object.class, Object.class, String[].class), String[].class);
+        this.del = singleDel != null ? singleDel : multiDel == null ? null : multiDel.asCollector(String[].class, 1);
+
+        // Older Jedis versions take the expiry in seconds as an int
+        MethodType expireType = MethodType.methodType(Object.class, Object.class, String.class, long.class);
+        MethodHandle longExpire = bind(type, "expire", expireType, String.class, long.class);
+        MethodHandle intExpire = bind(type, "expire", MethodType.methodType(Object.class, Object.class, String.class, int.class),
+                String.class, int.class);
+        this.expire = longExpire != null ? longExpire
+                : intExpire == null ? null : MethodHandles.explicitCastArguments(intExpire, expireType);
+    }
+
+    /**
+     * @param client A Jedis client, pipeline or response
+     * @return the commands bound to the client's class
+     */
+    static JedisCommands of(Object client) {
+        return CACHE.get(client.getClass());
+    }
+
+    Object get(Object client, String key) throws Throwable {
+        return (Object) require(get, "get").invokeExact(client, key);
+    }
+
+    Object set(Object client, String key, String value) throws Throwable {
+        return (Object) require(set, "set").invokeExact(client, key, value);
+    }
+
+    Object incr(Object client, String key) throws Throwable {
+        return (Object) require(incr, "incr").invokeExact(client, key);
+    }
+
+    Object decr(Object client, String key) throws Throwable {
+        return (Object) require(decr, "decr").invokeExact(client, key);
+    }
+
+    Object incrBy(Object client, String key, long increment) throws Throwable {
+        return (Object) require(incrBy, "incrBy").invokeExact(client, key, increment);
+    }
+
+    Object del(Object client, String key) throws Throwable {
+        return (Object) require(del, "del").invokeExact(client, key);
+    }
+
+    Object sadd(Object client, String key, String[] values) throws Throwable {
+        return (Object) require(sadd, "sadd").invokeExact(client, key, values);
+    }
+
+    Object srem(Object client, String key, String[] values) throws Throwable {
+        return (Object) require(srem, "srem").invokeExact(client, key, values);
+    }
+
+    Object sismember(Object client, String key, String value) throws Throwable {
+        return (Object) require(sismember, "sismember").invokeExact(client, key, value);
+    }
+
+    Object rpush(Object client, String key, String[] values) throws Throwable {
+        return (Object) require(rpush, "rpush").invokeExact(client, key, values);
+    }
+
+    Object hset(Object client, String key, String field, String value) throws Throwable {
+        return (Object) require(hset, "hset").invokeExact(client, key, field, value);
+    }
+
+    Object mget(Object client, String[] keys) throws Throwable {
+        return (Object) require(mget, "mget").invokeExact(client, keys);
+    }
+
+    Object hgetAll(Object client, String key) throws Throwable {
+        return (Object) require(hgetAll, "hgetAll").invokeExact(client, key);
+    }
+
+    Object smembers(Object client, String key) throws Throwable {
+        return (Object) require(smembers, "smembers").invokeExact(client, key);
+    }
+
+    Object expire(Object client, String key, long seconds) throws Throwable {
+        return (Object) require(expire, "expire").invokeExact(client, key, seconds);
+    }
+
+    Object eval(Object client, String script, List<String> keys, List<String> args) throws Throwable {
+        return (Object) require(eval, "eval").invokeExact(client, script, keys, args);
+    }
+
+    Object zrem(Object client, String key, String[] members) throws Throwable {
+        return (Object) require(zrem, "zrem").invokeExact(client, key, members);
+    }
+
+    Object hvals(Object client, String key) throws Throwable {
+        return (Object) require(hvals, "hvals").invokeExact(client, key);
+    }
+
+    Object hdel(Object client, String key, String[] fields) throws Throwable {
+        return (Object) require(hdel, "hdel").invokeExact(client, key, fields);
+    }
+
+    // Null if the client can't pipeline
+    Object pipelined(Object client) throws Throwable {
+        return pipelined == null ? null : (Object) pipelined.invokeExact(client);
+    }
+
+    void sync(Object pipeline) throws Throwable {
+        require(sync, "sync").invokeExact(pipeline);
+    }
+
+    // The value of a pipeline response, once the pipeline was synced
+    Object value(Object response) throws Throwable {
+        return (Object) require(responseGet, "get").invokeExact(response);
+    }
+
+    private MethodHandle require(MethodHandle handle, String command) {
+        if (handle == null) {
+            throw new UnsupportedOperationException(type.getName() + " does not support " + command);
+        }
+        return handle;
+    }
+
+    private static MethodHandle bind(Class<?> type, String name, MethodType methodType, Class<?>... params) {
+        try {
+            Method method = type.getMethod(name, params);
+            method.trySetAccessible();
+            return LOOKUP.unreflect(method).asType(methodType);
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+}
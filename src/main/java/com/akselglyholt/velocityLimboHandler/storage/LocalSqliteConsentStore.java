@@ -8,15 +8,59 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.function.Consumer;
 import java.util.logging.Logger;
 
+/**
+ * Consent storage in a local SQLite database.
+ * Writes go through a single connection, while reads are spread over a small pool of read-only connections.
+ * The database runs in WAL mode, so reads don't wait for writes and scale with the number of readers.
+ * Every connection keeps its prepared statements for its whole lifetime.
+ */
 public class LocalSqliteConsentStore implements ConsentStore {
+    private static final String SELECT_SQL = "SELECT 1 FROM consented WHERE player_id = ? LIMIT 1";
+    private static final String INSERT_SQL = "INSERT OR IGNORE INTO consented(player_id) VALUES (?)";
+    private static final String DELETE_SQL = "DELETE FROM consented WHERE player_id = ?";
+    private static final String SELECT_ALL_SQL = "SELECT player_id FROM consented";
+    // SQLITE_OPEN_READONLY
+    private static final String READ_ONLY_OPEN_MODE = "1";
+
     private final Logger logger;
-    private final Connection connection;
-    private final Object lock = new Object();
+    private final Connection writer;
+    private final PreparedStatement insertStatement;
+    private final PreparedStatement deleteStatement;
+    private final Object writeLock = new Object();
+    private final List<Reader> readers = new ArrayList<>();
+    private final BlockingQueue<Reader> idleReaders;
+
+    // A read-only connection and its cached statement, used by one reader at a time
+    private static final class Reader {
+        private final Connection connection;
+        private final PreparedStatement selectStatement;
+
+        private Reader(Connection connection) throws SQLException {
+            this.connection = connection;
+            this.selectStatement = connection.prepareStatement(SELECT_SQL);
+        }
+    }
 
     public LocalSqliteConsentStore(Path filePath, Logger logger) throws SQLException {
+        this(filePath, logger, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param filePath The database file, created if it doesn't exist
+     * @param logger The logger failed queries are reported to
+     * @param readerCount How many read-only connections to open
+     */
+    public LocalSqliteConsentStore(Path filePath, Logger logger, int readerCount) throws SQLException {
         this.logger = logger;
         try {
             Files.createDirectories(filePath.getParent());
@@ -31,70 +75,177 @@ public class LocalSqliteConsentStore implements ConsentStore {
         } catch (ClassNotFoundException e) {
             throw new SQLException("SQLite driver not found: " + e.getMessage(), e);
         }
-        this.connection = DriverManager.getConnection("jdbc:sqlite:" + filePath.toAbsolutePath());
-        try (Statement stmt = connection.createStatement()) {
-            stmt.execute("PRAGMA journal_mode=WAL");
-            stmt.execute("PRAGMA synchronous=NORMAL");
+
+        String url = "jdbc:sqlite:" + filePath.toAbsolutePath();
+        this.writer = DriverManager.getConnection(url);
+        try {
+            try (Statement stmt = writer.createStatement()) {
+                stmt.execute("PRAGMA journal_mode=WAL");
+                stmt.execute("PRAGMA synchronous=NORMAL");
+            }
+            initSchema();
+            this.insertStatement = writer.prepareStatement(INSERT_SQL);
+            this.deleteStatement = writer.prepareStatement(DELETE_SQL);
+
+            // Readers are opened once the schema exists, read-only connections can't create it
+            int count = Math.max(1, readerCount);
+            this.idleReaders = new ArrayBlockingQueue<>(count);
+            Properties readOnly = new Properties();
+            readOnly.setProperty("open_mode", READ_ONLY_OPEN_MODE);
+            for (int i = 0; i < count; i++) {
+                Reader reader = new Reader(DriverManager.getConnection(url, readOnly));
+                readers.add(reader);
+                idleReaders.add(reader);
+            }
+        } catch (SQLException e) {
+            close();
+            throw e;
         }
-        initSchema();
     }
 
     private void initSchema() throws SQLException {
         String sql = "CREATE TABLE IF NOT EXISTS consented (player_id TEXT PRIMARY KEY)";
-        synchronized (lock) {
-            try (Statement stmt = connection.createStatement()) {
-                stmt.execute(sql);
-            }
+        try (Statement stmt = writer.createStatement()) {
+            stmt.execute(sql);
         }
     }
 
     @Override
     public boolean hasConsent(UUID playerId) {
-        String sql = "SELECT 1 FROM consented WHERE player_id = ? LIMIT 1";
-        synchronized (lock) {
-            try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                stmt.setString(1, playerId.toString());
-                try (ResultSet rs = stmt.executeQuery()) {
-                    return rs.next();
+        Reader reader;
+        try {
+            reader = idleReaders.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
+        try {
+            reader.selectStatement.setString(1, playerId.toString());
+            try (ResultSet rs = reader.selectStatement.executeQuery()) {
+                return rs.next();
+            }
+        } catch (SQLException e) {
+            logger.warning("Failed to read consent from sqlite: " + e.getMessage());
+            return false;
+        } finally {
+            idleReaders.offer(reader);
+        }
+    }
+
+    /**
+     * Stream every player that has consented, without holding them all in memory at once
+     * @param batchSize How many players are handed over at a time
+     * @param consumer Called with each batch, on the caller's thread
+     * @return how many players were read
+     */
+    public long forEachConsented(int batchSize, Consumer<List<UUID>> consumer) throws SQLException {
+        Reader reader;
+        try {
+            reader = idleReaders.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a sqlite reader", e);
+        }
+
+        int size = Math.max(1, batchSize);
+        long total = 0;
+        try (Statement stmt = reader.connection.createStatement()) {
+            stmt.setFetchSize(size);
+            try (ResultSet rs = stmt.executeQuery(SELECT_ALL_SQL)) {
+                List<UUID> batch = new ArrayList<>(size);
+                while (rs.next()) {
+                    try {
+                        batch.add(UUID.fromString(rs.getString(1)));
+                    } catch (IllegalArgumentException e) {
+                        logger.warning("Skipping malformed player id in sqlite: " + rs.getString(1));
+                        continue;
+                    }
+                    if (batch.size() == size) {
+                        consumer.accept(batch);
+                        total += batch.size();
+                        batch = new ArrayList<>(size);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    consumer.accept(batch);
+                    total += batch.size();
                 }
-            } catch (SQLException e) {
-                logger.warning("Failed to read consent from sqlite: " + e.getMessage());
-                return false;
             }
+        } finally {
+            idleReaders.offer(reader);
         }
+        return total;
     }
 
     @Override
     public void setConsent(UUID playerId, boolean consented) {
-        synchronized (lock) {
-            if (consented) {
-                String sql = "INSERT OR IGNORE INTO consented(player_id) VALUES (?)";
-                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                    stmt.setString(1, playerId.toString());
-                    stmt.executeUpdate();
-                } catch (SQLException e) {
-                    logger.warning("Failed to write consent to sqlite: " + e.getMessage());
+        synchronized (writeLock) {
+            PreparedStatement stmt = consented ? insertStatement : deleteStatement;
+            try {
+                stmt.setString(1, playerId.toString());
+                stmt.executeUpdate();
+            } catch (SQLException e) {
+                logger.warning((consented ? "Failed to write consent to sqlite: " : "Failed to remove consent from sqlite: ")
+                        + e.getMessage());
+            }
+        }
+    }
+
+    @Override
+    public void setConsents(Map<UUID, Boolean> changes) {
+        if (changes.isEmpty()) return;
+        synchronized (writeLock) {
+            try {
+                // One transaction for the whole batch instead of one per change
+                writer.setAutoCommit(false);
+                for (Map.Entry<UUID, Boolean> change : changes.entrySet()) {
+                    PreparedStatement stmt = change.getValue() ? insertStatement : deleteStatement;
+                    stmt.setString(1, change.getKey().toString());
+                    stmt.addBatch();
                 }
-            } else {
-                String sql = "DELETE FROM consented WHERE player_id = ?";
-                try (PreparedStatement stmt = connection.prepareStatement(sql)) {
-                    stmt.setString(1, playerId.toString());
-                    stmt.executeUpdate();
+                insertStatement.executeBatch();
+                deleteStatement.executeBatch();
+                writer.commit();
+            } catch (SQLException e) {
+                rollback();
+                throw new IllegalStateException("Failed to write consent batch to sqlite: " + e.getMessage(), e);
+            } finally {
+                try {
+                    writer.setAutoCommit(true);
                 } catch (SQLException e) {
-                    logger.warning("Failed to remove consent from sqlite: " + e.getMessage());
+                    logger.warning("Failed to restore sqlite auto commit: " + e.getMessage());
                 }
             }
         }
     }
 
+    private void rollback() {
+        try {
+            insertStatement.clearBatch();
+            deleteStatement.clearBatch();
+            writer.rollback();
+        } catch (SQLException e) {
+            logger.warning("Failed to roll back sqlite consent batch: " + e.getMessage());
+        }
+    }
+
     @Override
     public void close() {
-        synchronized (lock) {
-            try {
-                connection.close();
-            } catch (SQLException e) {
-                logger.warning("Failed to close sqlite connection: " + e.getMessage());
-            }
+        for (Reader reader : readers) {
+            closeQuietly(reader.connection);
+        }
+        synchronized (writeLock) {
+            closeQuietly(writer);
+        }
+    }
+
+    private void closeQuietly(Connection connection) {
+        try {
+            // Closing the connection also closes its statements
+            connection.close();
+        } catch (SQLException e) {
+            logger.warning("Failed to close sqlite connection: " + e.getMessage());
         }
     }
 }
@@ -0,0 +1,33 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+/**
+ * What a player's first server selection needs from storage, looked up while they log in
+ */
+public final class LoginPreload {
+    private final boolean consented;
+    private final String lastGroup;
+    private final String currentChannel;
+
+    /**
+     * @param consented Whether the player has given consent, true if consent isn't required
+     * @param lastGroup The player's last group, or null
+     * @param currentChannel The server the store still has the player on, or null
+     */
+    public LoginPreload(boolean consented, String lastGroup, String currentChannel) {
+        this.consented = consented;
+        this.lastGroup = lastGroup;
+        this.currentChannel = currentChannel;
+    }
+
+    public boolean hasConsent() {
+        return consented;
+    }
+
+    public String getLastGroup() {
+        return lastGroup;
+    }
+
+    public String getCurrentChannel() {
+        return currentChannel;
+    }
+}
@@ -8,20 +8,17 @@ import com.velocitypowered.api.proxy.server.RegisteredServer;
 import dev.dejvokep.boostedyaml.route.Route;
 import net.kyori.adventure.text.minimessage.MiniMessage;
 
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Queue;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.function.Supplier;
+import java.util.function.Function;
 
 public class PlayerManager {
-    private final Map<Player, String> playerData;
-    private final Map<Player, Boolean> connectingPlayers;
-    private final Map<String, Queue<Player>> reconnectQueues = new ConcurrentHashMap<>();
+    private final Map<UUID, PlayerSession> sessions = new ConcurrentHashMap<>();
+    private final Map<String, ReconnectQueue> reconnectQueues = new ConcurrentHashMap<>();
     private final MiniMessage miniMessage = MiniMessage.miniMessage();
-    private final Map<UUID, String> playerConnectionIssues = new ConcurrentHashMap<>();
-    private final Map<UUID, String> intendedServers = new ConcurrentHashMap<>();
     private static String queuePositionMsg;
 
     /**
@@ -34,9 +31,6 @@ public class PlayerManager {
     }
 
     public PlayerManager() {
-        this.playerData = new ConcurrentHashMap<>();
-        this.connectingPlayers = new ConcurrentHashMap<>();
-
         queuePositionMsg = VelocityLimboHandler.getMessageConfig().getString(Route.from("queuePositionJoin"));
     }
 
@@ -47,7 +41,7 @@ public class PlayerManager {
      */
     public void addPlayer(Player player, RegisteredServer registeredServer) {
         // Don't override if the player is already registered
-        if (this.playerData.containsKey(player)) return;
+        if (isPlayerRegistered(player)) return;
 
         if (isAuthBlocked(player)) return;
         if (registeredServer == null) {
@@ -61,19 +55,22 @@ public class PlayerManager {
         }
 
         String serverName = registeredServer.getServerInfo().getName();
-        this.playerData.put(player, serverName);
+        boolean registered = transition(player.getUniqueId(), session -> {
+            if (session.targetServer != null) return false;
+            session.targetServer = serverName;
+            return true;
+        });
+        if (!registered) return;
 
         Utility.sendWelcomeMessage(player, null);
 
         // Only maintain a reconnect queue when queue mode is enabled
-        Queue<Player> queue = reconnectQueues.computeIfAbsent(serverName, s -> new ConcurrentLinkedQueue<>());
         boolean consented = VelocityLimboHandler.getConsentManager() == null
                 || VelocityLimboHandler.getConsentManager().hasConsent(player);
-        if (VelocityLimboHandler.isQueueEnabled() && consented && !queue.contains(player)) {
-            addPlayerToQueue(player, registeredServer);
-
+        if (VelocityLimboHandler.isQueueEnabled() && consented && enqueue(player, serverName)) {
             String formatedMsg = MessageFormatter.formatMessage(queuePositionMsg, player);
             player.sendMessage(miniMessage.deserialize(formatedMsg));
+            VelocityLimboHandler.signalDrain(registeredServer);
         }
     }
 
@@ -85,11 +82,10 @@ public class PlayerManager {
         }
 
         RegisteredServer server = getPreviousServer(player);
-        Queue<Player> queue = reconnectQueues.computeIfAbsent(server.getServerInfo().getName(), s -> new ConcurrentLinkedQueue<>());
-        if (!queue.contains(player)) {
-            queue.add(player);
+        if (enqueue(player, server.getServerInfo().getName())) {
             String formatedMsg = MessageFormatter.formatMessage(queuePositionMsg, player);
             player.sendMessage(miniMessage.deserialize(formatedMsg));
+            VelocityLimboHandler.signalDrain(server);
         }
     }
 
@@ -98,33 +94,97 @@ public class PlayerManager {
      * @param player The player to remove
      */
     public void removePlayer(Player player) {
-        removePlayerFromQueue(player);
-        this.playerData.remove(player);
-        this.connectingPlayers.remove(player);
-        this.intendedServers.remove(player.getUniqueId());
+        // Connection issues are kept until they are cleared on their own
+        transition(player.getUniqueId(), session -> {
+            dequeue(player.getUniqueId(), session);
+            session.targetServer = null;
+            session.connecting = false;
+            session.intendedServer = null;
+            return null;
+        });
         VelocityLimboHandler.getReconnectBlocker().unblock(player.getUniqueId());
     }
 
     public void setIntendedServer(Player player, RegisteredServer server) {
         if (server == null) return;
-        intendedServers.put(player.getUniqueId(), server.getServerInfo().getName());
+        String serverName = server.getServerInfo().getName();
+        transition(player.getUniqueId(), session -> session.intendedServer = serverName);
     }
 
     public RegisteredServer consumeIntendedServer(Player player) {
-        String serverName = intendedServers.remove(player.getUniqueId());
+        String serverName = transition(player.getUniqueId(), session -> {
+            String intended = session.intendedServer;
+            session.intendedServer = null;
+            return intended;
+        });
         if (serverName == null) return null;
         return VelocityLimboHandler.getProxyServer()
                 .getServer(serverName)
                 .orElse(null);
     }
 
+    /**
+     * Keep what was looked up at login until the player's first server is selected
+     * @param playerId The player that's logging in
+     * @param preload The player's consent, last group and current channel
+     */
+    public void storePreload(UUID playerId, LoginPreload preload) {
+        if (preload == null) return;
+        transition(playerId, session -> session.preload = preload);
+    }
+
+    /**
+     * Drop what was looked up at login, for players that leave before their first server is selected
+     * @param player The player that left
+     */
+    public void clearPreload(Player player) {
+        consumePreload(player);
+    }
+
+    /**
+     * @param player The player whose first server is being selected
+     * @return what was looked up at login, or null if it's missing or was already taken
+     */
+    public LoginPreload consumePreload(Player player) {
+        if (!sessions.containsKey(player.getUniqueId())) return null;
+        return transition(player.getUniqueId(), session -> {
+            LoginPreload preload = session.preload;
+            session.preload = null;
+            return preload;
+        });
+    }
+
+    /**
+     * Hold a group slot for the player until their count was written
+     * @param player The player being connected
+     * @param reservation The slot reserved for them
+     */
+    public void setReservation(Player player, SlotReservation reservation) {
+        if (reservation == null) return;
+        transition(player.getUniqueId(), session -> session.reservation = reservation);
+    }
+
+    /**
+     * @param player The player whose slot should be given back
+     * @return the slot held for the player, or null if there's none or it was already taken
+     */
+    public SlotReservation consumeReservation(Player player) {
+        if (!sessions.containsKey(player.getUniqueId())) return null;
+        return transition(player.getUniqueId(), session -> {
+            SlotReservation reservation = session.reservation;
+            session.reservation = null;
+            return reservation;
+        });
+    }
+
     /**
      * Get the server that the player is trying to reconnect to
      * @param player The player of which
      * @return Returns a server of type RegisteredServer
      */
     public RegisteredServer getPreviousServer(Player player) {
-        String serverName = this.playerData.get(player);
+        PlayerSession session = sessions.get(player.getUniqueId());
+        String serverName = session == null ? null : session.targetServer;
 
         if (serverName != null) {
             return VelocityLimboHandler.getProxyServer()
@@ -147,72 +207,160 @@ public class PlayerManager {
     }
 
     public boolean isPlayerRegistered(Player player) {
-        return playerData.containsKey(player);
+        PlayerSession session = sessions.get(player.getUniqueId());
+        return session != null && session.targetServer != null;
+    }
+
+    /**
+     * Apply a change to a player's session atomically. The session is created if needed,
+     * and dropped again once it no longer holds anything.
+     * @param playerId The player whose session should change
+     * @param change The change to apply, run while the session is locked
+     * @return whatever the change returned
+     */
+    private <T> T transition(UUID playerId, Function<PlayerSession, T> change) {
+        Object[] result = new Object[1];
+        sessions.compute(playerId, (id, session) -> {
+            if (session == null) session = new PlayerSession();
+            result[0] = change.apply(session);
+            return session.isEmpty() ? null : session;
+        });
+
+        @SuppressWarnings("unchecked")
+        T value = (T) result[0];
+        return value;
+    }
+
+    private ReconnectQueue getQueue(String serverName) {
+        return reconnectQueues.computeIfAbsent(serverName, s -> new ReconnectQueue());
+    }
+
+    // Maintenance bypass is worked out once here, instead of every time the queue is scanned
+    private boolean enqueue(Player player, String serverName) {
+        boolean bypass = Utility.hasMaintenance() && Utility.canBypassMaintenance(player, serverName);
+        return transition(player.getUniqueId(), session -> {
+            // A player only waits in one queue at a time
+            if (session.queuedServer != null && !session.queuedServer.equals(serverName)) {
+                dequeue(player.getUniqueId(), session);
+            }
+            if (!getQueue(serverName).add(player, bypass)) return false;
+            session.queuedServer = serverName;
+            return true;
+        });
+    }
+
+    private void dequeue(UUID playerId, PlayerSession session) {
+        if (session.queuedServer == null) return;
+
+        ReconnectQueue queue = reconnectQueues.get(session.queuedServer);
+        if (queue != null) queue.remove(playerId);
+        session.queuedServer = null;
     }
 
     public void addPlayerToQueue(Player player, RegisteredServer server) {
-        reconnectQueues.computeIfAbsent(server.getServerInfo().getName(), s -> new ConcurrentLinkedQueue<>()).add(player);
+        enqueue(player, server.getServerInfo().getName());
     }
 
-    public void removePlayerFromQueue(Player player) {
-        String serverName = this.playerData.get(player);
-        if (serverName == null && VelocityLimboHandler.getDirectConnectServer() != null) {
-            serverName = VelocityLimboHandler.getDirectConnectServer().getServerInfo().getName();
+    /**
+     * Work out again which queued players may bypass maintenance, e.g. after the whitelist changed
+     */
+    public void refreshMaintenanceBypass() {
+        for (Map.Entry<String, ReconnectQueue> entry : reconnectQueues.entrySet()) {
+            ReconnectQueue queue = entry.getValue();
+            for (Player player : queue.snapshot()) {
+                queue.setBypass(player.getUniqueId(), Utility.canBypassMaintenance(player, entry.getKey()));
+            }
         }
+    }
 
-        if (serverName == null) return;
+    /**
+     * @param server the server of which you want the players
+     * @return the queued players that may bypass maintenance, in queue order
+     */
+    public List<Player> getMaintenanceAllowedPlayers(RegisteredServer server) {
+        ReconnectQueue queue = reconnectQueues.get(server.getServerInfo().getName());
+        return queue == null ? List.of() : queue.bypassSnapshot();
+    }
 
-        Queue<Player> queue = reconnectQueues.get(serverName);
-        if (queue != null) queue.remove(player);
+    public void removePlayerFromQueue(Player player) {
+        if (!sessions.containsKey(player.getUniqueId())) return;
+        transition(player.getUniqueId(), session -> {
+            dequeue(player.getUniqueId(), session);
+            return null;
+        });
     }
 
     public Player getNextQueuedPlayer(RegisteredServer server) {
-        Queue<Player> queue = reconnectQueues.get(server.getServerInfo().getName());
+        ReconnectQueue queue = reconnectQueues.get(server.getServerInfo().getName());
         return queue == null ? null : queue.peek();
     }
 
     public boolean hasQueuedPlayers(RegisteredServer server) {
-        Queue<Player> queue = reconnectQueues.get(server.getServerInfo().getName());
+        ReconnectQueue queue = reconnectQueues.get(server.getServerInfo().getName());
         return queue != null && !queue.isEmpty();
     }
 
     public int getQueuePosition(Player player) {
-        RegisteredServer server = getPreviousServer(player);
+        PlayerSession session = sessions.get(player.getUniqueId());
+        String serverName = session == null ? null : session.queuedServer;
+        if (serverName == null) return -1;
 
-        Queue<Player> queue = reconnectQueues.get(server.getServerInfo().getName());
+        ReconnectQueue queue = reconnectQueues.get(serverName);
         if (queue == null) return -1;
 
-        int position = 1;
-        for (Player p : queue) {
-            if (p.equals(player)) return position;
-            position++;
-        }
+        return queue.getPosition(player.getUniqueId());
+    }
 
-        return -1;
+    /**
+     * @param server the server of which you want the queue
+     * @return the queued players in order, safe to iterate while the queue changes
+     */
+    public List<Player> getQueueSnapshot(RegisteredServer server) {
+        ReconnectQueue queue = reconnectQueues.get(server.getServerInfo().getName());
+        return queue == null ? List.of() : queue.snapshot();
+    }
 
+    /**
+     * Snapshot every queue once, so a notify cycle doesn't have to look up positions per player
+     * @return the 1-based queue position of every queued player, keyed by UUID
+     */
+    public Map<UUID, Integer> snapshotQueuePositions() {
+        Map<UUID, Integer> positions = new HashMap<>();
+        for (ReconnectQueue queue : reconnectQueues.values()) {
+            int position = 1;
+            for (Player player : queue.snapshot()) {
+                positions.put(player.getUniqueId(), position++);
+            }
+        }
+        return positions;
     }
 
     public void addPlayerWithIssue(Player player, String issue) {
-        playerConnectionIssues.put(player.getUniqueId(), issue);
+        transition(player.getUniqueId(), session -> session.issue = issue);
     }
 
     public boolean hasConnectionIssue(Player player) {
-        return playerConnectionIssues.containsKey(player.getUniqueId());
+        return getConnectionIssue(player) != null;
     }
 
     public String getConnectionIssue(Player player) {
-        return playerConnectionIssues.get(player.getUniqueId());
+        PlayerSession session = sessions.get(player.getUniqueId());
+        return session == null ? null : session.issue;
     }
 
     public void removePlayerIssue(Player player) {
-        playerConnectionIssues.remove(player.getUniqueId());
+        if (!sessions.containsKey(player.getUniqueId())) return;
+        transition(player.getUniqueId(), session -> session.issue = null);
     }
 
     public void pruneInactivePlayers() {
-        for (Queue<Player> queue : reconnectQueues.values()) {
+        for (ReconnectQueue queue : reconnectQueues.values()) {
             queue.removeIf(p -> !p.isActive());
         }
-        playerData.keySet().removeIf(p -> !p.isActive());
+
+        // Drop the sessions of players that have left the proxy
+        var proxyServer = VelocityLimboHandler.getProxyServer();
+        sessions.keySet().removeIf(playerId -> proxyServer.getPlayer(playerId).isEmpty());
     }
 
     /**
@@ -221,25 +369,37 @@ public class PlayerManager {
      */
     public static Player findFirstMaintenanceAllowedPlayer(RegisteredServer server) {
         // Find the queue for the server
-        Queue<Player> queue = VelocityLimboHandler.getPlayerManager().reconnectQueues.get(server.getServerInfo().getName());
+        String serverName = server.getServerInfo().getName();
+        ReconnectQueue queue = VelocityLimboHandler.getPlayerManager().reconnectQueues.get(serverName);
         if (queue == null) return null;
 
-        // Loop through all players and check if any match is found
-        for (Player player : queue) {
-            if (player.hasPermission("maintenance.admin")
-                    || player.hasPermission("maintenance.bypass")
-                    || player.hasPermission("maintenance.singleserver.bypass." + server.getServerInfo().getName())
-                    || Utility.playerMaintenanceWhitelisted(player)) {
-                return player;
-            }
+        // Players were checked when they were queued, so only confirm the head of the bypass index
+        Player player;
+        while ((player = queue.peekBypass()) != null) {
+            if (Utility.canBypassMaintenance(player, serverName)) return player;
+            // Lost their bypass since they were queued
+            queue.setBypass(player.getUniqueId(), false);
         }
 
         return null;
     }
 
-    // Check if player is in the hashmap
     public boolean isPlayerConnecting(Player player) {
-        return this.connectingPlayers.containsKey(player);
+        PlayerSession session = sessions.get(player.getUniqueId());
+        return session != null && session.connecting;
+    }
+
+    /**
+     * Mark the player as connecting, unless they already are
+     * @param player is the player of which you want to set the status of
+     * @return true if the player was marked, false if a connection is already in progress
+     */
+    public boolean beginConnecting(Player player) {
+        return transition(player.getUniqueId(), session -> {
+            if (session.connecting) return false;
+            session.connecting = true;
+            return true;
+        });
     }
 
     /**
@@ -248,10 +408,7 @@ public class PlayerManager {
      * @param add    is whether you want to add the player, or remove it
      */
     public void setPlayerConnecting(Player player, Boolean add) {
-        if (add) {
-            this.connectingPlayers.put(player, true);
-        } else {
-            this.connectingPlayers.remove(player);
-        }
+        if (!add && !sessions.containsKey(player.getUniqueId())) return;
+        transition(player.getUniqueId(), session -> session.connecting = add);
     }
 }
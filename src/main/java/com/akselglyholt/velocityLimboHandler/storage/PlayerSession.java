@@ -0,0 +1,26 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+/**
+ * Everything the PlayerManager tracks about a single player.
+ * Sessions are keyed by UUID and only changed by the PlayerManager inside an atomic map update,
+ * so they never hold on to the player's connection.
+ */
+final class PlayerSession {
+    // The server the player should be reconnected to
+    volatile String targetServer;
+    volatile boolean connecting;
+    volatile String issue;
+    volatile String intendedServer;
+    // The server whose reconnect queue the player is in
+    volatile String queuedServer;
+    // Looked up at login, until the first server selection takes it
+    volatile LoginPreload preload;
+    // Held from the connect until the player's count was written
+    volatile SlotReservation reservation;
+
+    boolean isEmpty() {
+        return targetServer == null && !connecting && issue == null
+                && intendedServer == null && queuedServer == null && preload == null
+                && reservation == null;
+    }
+}
@@ -0,0 +1,205 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import com.velocitypowered.api.proxy.Player;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.function.Predicate;
+
+/**
+ * FIFO reconnect queue indexed by player UUID.
+ * Every player occupies a slot in insertion order, and a Fenwick tree over the slots keeps
+ * enqueue, removal, contains and rank lookups at O(log n) or better.
+ * Players that may bypass maintenance are also indexed separately, in queue order.
+ */
+public class ReconnectQueue {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<UUID, Integer> slotByPlayer = new HashMap<>();
+    private Player[] slots = new Player[INITIAL_CAPACITY];
+    private int[] tree = new int[INITIAL_CAPACITY + 1];
+    private final TreeSet<Integer> bypassSlots = new TreeSet<>();
+    private int head;
+    private int tail;
+
+    /**
+     * Append a player to the end of the queue
+     * @param player The player to add
+     * @return true if the player was added, false if they were already queued
+     */
+    public boolean add(Player player) {
+        return add(player, false);
+    }
+
+    /**
+     * Append a player to the end of the queue
+     * @param player The player to add
+     * @param bypass Whether the player may join the server while it's in maintenance
+     * @return true if the player was added, false if they were already queued
+     */
+    public synchronized boolean add(Player player, boolean bypass) {
+        UUID playerId = player.getUniqueId();
+        if (slotByPlayer.containsKey(playerId)) return false;
+
+        if (tail == slots.length) {
+            resize();
+        }
+
+        int slot = tail++;
+        slots[slot] = player;
+        slotByPlayer.put(playerId, slot);
+        update(slot, 1);
+        if (bypass) bypassSlots.add(slot);
+        return true;
+    }
+
+    public synchronized boolean remove(UUID playerId) {
+        Integer slot = slotByPlayer.remove(playerId);
+        if (slot == null) return false;
+
+        slots[slot] = null;
+        update(slot, -1);
+        bypassSlots.remove(slot);
+        advanceHead();
+        return true;
+    }
+
+    /**
+     * Update whether a queued player may bypass maintenance, keeping their place in the queue
+     * @param playerId The queued player
+     * @param bypass Whether the player may join the server while it's in maintenance
+     */
+    public synchronized void setBypass(UUID playerId, boolean bypass) {
+        Integer slot = slotByPlayer.get(playerId);
+        if (slot == null) return;
+
+        if (bypass) {
+            bypassSlots.add(slot);
+        } else {
+            bypassSlots.remove(slot);
+        }
+    }
+
+    // The first queued player that may bypass maintenance
+    public synchronized Player peekBypass() {
+        return bypassSlots.isEmpty() ? null : slots[bypassSlots.first()];
+    }
+
+    /**
+     * @return the players that may bypass maintenance in queue order, copied like {@link #snapshot()}
+     */
+    public synchronized List<Player> bypassSnapshot() {
+        List<Player> players = new ArrayList<>(bypassSlots.size());
+        for (int slot : bypassSlots) {
+            players.add(slots[slot]);
+        }
+        return players;
+    }
+
+    public synchronized boolean contains(UUID playerId) {
+        return slotByPlayer.containsKey(playerId);
+    }
+
+    /**
+     * @param playerId the player of which you want the position
+     * @return 1-based position in the queue, or -1 if the player isn't queued
+     */
+    public synchronized int getPosition(UUID playerId) {
+        Integer slot = slotByPlayer.get(playerId);
+        if (slot == null) return -1;
+        return prefixSum(slot);
+    }
+
+    public synchronized Player peek() {
+        return head < tail ? slots[head] : null;
+    }
+
+    public synchronized int size() {
+        return slotByPlayer.size();
+    }
+
+    public synchronized boolean isEmpty() {
+        return slotByPlayer.isEmpty();
+    }
+
+    public synchronized void removeIf(Predicate<Player> filter) {
+        for (int slot = head; slot < tail; slot++) {
+            Player player = slots[slot];
+            if (player != null && filter.test(player)) {
+                slotByPlayer.remove(player.getUniqueId());
+                slots[slot] = null;
+                update(slot, -1);
+                bypassSlots.remove(slot);
+            }
+        }
+        advanceHead();
+    }
+
+    /**
+     * @return the queued players in order, copied so callers can iterate without holding the queue
+     */
+    public synchronized List<Player> snapshot() {
+        List<Player> players = new ArrayList<>(slotByPlayer.size());
+        for (int slot = head; slot < tail; slot++) {
+            if (slots[slot] != null) players.add(slots[slot]);
+        }
+        return players;
+    }
+
+    private void advanceHead() {
+        while (head < tail && slots[head] == null) {
+            head++;
+        }
+    }
+
+    // Compact live entries to the front, growing only when the queue is more than half full
+    private void resize() {
+        int live = slotByPlayer.size();
+        int capacity = live * 2 >= slots.length ? slots.length * 2 : slots.length;
+
+        Player[] compacted = new Player[capacity];
+        TreeSet<Integer> compactedBypass = new TreeSet<>();
+        int next = 0;
+        for (int slot = head; slot < tail; slot++) {
+            Player player = slots[slot];
+            if (player == null) continue;
+            compacted[next] = player;
+            if (bypassSlots.contains(slot)) compactedBypass.add(next);
+            slotByPlayer.put(player.getUniqueId(), next);
+            next++;
+        }
+
+        slots = compacted;
+        bypassSlots.clear();
+        bypassSlots.addAll(compactedBypass);
+        head = 0;
+        tail = next;
+
+        // Linear Fenwick build over the compacted slots
+        tree = new int[capacity + 1];
+        Arrays.fill(tree, 1, next + 1, 1);
+        for (int i = 1; i <= capacity; i++) {
+            int parent = i + (i & -i);
+            if (parent <= capacity) tree[parent] += tree[i];
+        }
+    }
+
+    private void update(int slot, int delta) {
+        for (int i = slot + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private int prefixSum(int slot) {
+        int sum = 0;
+        for (int i = slot + 1; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+}
@@ -1,7 +1,62 @@
 package com.akselglyholt.velocityLimboHandler.storage;
 
-@Deprecated
+import dev.dejvokep.boostedyaml.YamlDocument;
+
+/**
+ * Connection settings of the standalone Redis store
+ */
 public final class RedisConfig {
-    private RedisConfig() {
+    private final String host;
+    private final int port;
+    private final String password;
+    private final int database;
+    private final int poolSize;
+    private final int timeoutMillis;
+
+    public RedisConfig(String host, int port, String password, int database, int poolSize, int timeoutMillis) {
+        this.host = host == null || host.isBlank() ? "localhost" : host;
+        this.port = port;
+        this.password = password == null ? "" : password;
+        this.database = Math.max(0, database);
+        this.poolSize = Math.max(1, poolSize);
+        this.timeoutMillis = Math.max(100, timeoutMillis);
+    }
+
+    /**
+     * @param config The plugin config
+     * @return the settings under the redis section
+     */
+    public static RedisConfig fromConfig(YamlDocument config) {
+        return new RedisConfig(
+                config.getString("redis.host", "localhost"),
+                config.getInt("redis.port", 6379),
+                config.getString("redis.password", ""),
+                config.getInt("redis.database", 0),
+                config.getInt("redis.pool-size", 8),
+                config.getInt("redis.timeout", 2000));
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public String getPassword() {
+        return password;
+    }
+
+    public int getDatabase() {
+        return database;
+    }
+
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    public int getTimeoutMillis() {
+        return timeoutMillis;
     }
 }
@@ -0,0 +1,112 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+/**
+ * Lua scripts for the channel count operations that have to be atomic across proxies.
+ * Each one runs on the Redis server in a single round trip.
+ * Every key a script touches is passed in KEYS. On Redis Cluster they also have to share a slot,
+ * which a hash tag in the key prefix gives, e.g. "{vlh}".
+ */
+final class RedisScripts {
+    /**
+     * Add ARGV[1] to the count in KEYS[1], clamping it at 0.
+     * Returns the new count.
+     */
+    static final String ADJUST_WITH_FLOOR = """
+            local value = redis.call('INCRBY', KEYS[1], ARGV[1])
+            if value < 0 then
+                redis.call('SET', KEYS[1], 0)
+                return 0
+            end
+            return value
+            """;
+
+    /**
+     * Add ARGV[2] to this proxy's field ARGV[1] of the sharded count in KEYS[1], clamping it at 0.
+     * With ARGV[3] set to 1 the field is reset first, done once per server after the proxy started.
+     * Returns the new value of the field.
+     */
+    static final String ADJUST_FIELD_WITH_FLOOR = """
+            if ARGV[3] == '1' then
+                redis.call('HDEL', KEYS[1], ARGV[1])
+            end
+            local value = redis.call('HINCRBY', KEYS[1], ARGV[1], ARGV[2])
+            if value < 0 then
+                redis.call('HSET', KEYS[1], ARGV[1], 0)
+                return 0
+            end
+            return value
+            """;
+
+    /**
+     * Reserve a slot if the count plus the live reservations is under the limit.
+     * KEYS[1] is the shared count, or the per-proxy hash when sharded, KEYS[2] the reservations sorted by expiry.
+     * When leased, KEYS[3] onwards are the leases of the proxies to sum, read from the lease set by the caller.
+     * ARGV is the limit, the reservation ttl in milliseconds, the token, the server name and the count mode.
+     * Returns the token, or nil when the server is full.
+     */
+    static final String RESERVE_SLOT = """
+            if redis.replicate_commands then redis.replicate_commands() end
+            local time = redis.call('TIME')
+            local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000)
+            redis.call('ZREMRANGEBYSCORE', KEYS[2], '-inf', now)
+
+            local count = 0
+            if ARGV[5] == 'leased' then
+                for i = 3, #KEYS do
+                    count = count + tonumber(redis.call('HGET', KEYS[i], ARGV[4]) or '0')
+                end
+            elseif ARGV[5] == 'sharded' then
+                for _, value in ipairs(redis.call('HVALS', KEYS[1])) do
+                    count = count + tonumber(value)
+                end
+            else
+                count = tonumber(redis.call('GET', KEYS[1]) or '0')
+            end
+
+            if count + redis.call('ZCARD', KEYS[2]) >= tonumber(ARGV[1]) then
+                return false
+            end
+            redis.call('ZADD', KEYS[2], now + tonumber(ARGV[2]), ARGV[3])
+            redis.call('PEXPIRE', KEYS[2], ARGV[2])
+            return ARGV[3]
+            """;
+
+    /**
+     * Write this proxy's lease in KEYS[1] and register it in the lease set KEYS[2], in one atomic step.
+     * ARGV is the proxy id, the lease ttl in seconds, 1 to replace the whole lease or 0 to update it,
+     * then pairs of server name and count. The marker field keeps the lease alive while the proxy has no players,
+     * so only the expiry decides whether a proxy is gone.
+     */
+    static final String WRITE_LEASE = """
+            if ARGV[3] == '1' then
+                redis.call('DEL', KEYS[1])
+            end
+            for i = 4, #ARGV, 2 do
+                redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1])
+            end
+            redis.call('HSET', KEYS[1], '%s', '1')
+            redis.call('EXPIRE', KEYS[1], ARGV[2])
+            redis.call('SADD', KEYS[2], ARGV[1])
+            return 1
+            """.formatted(ValioBungeeChannelStore.LEASE_ALIVE_FIELD);
+
+    /**
+     * Drop proxies from the lease set KEYS[1] whose lease has expired.
+     * KEYS[2] onwards are the leases to check, ARGV the ids of the proxies they belong to, in the same order.
+     * Checked and removed in one step, so a proxy that renews its lease meanwhile is never dropped.
+     * Returns how many proxies were dropped.
+     */
+    static final String PRUNE_LEASES = """
+            local removed = 0
+            for i = 1, #ARGV do
+                if redis.call('EXISTS', KEYS[i + 1]) == 0 then
+                    redis.call('SREM', KEYS[1], ARGV[i])
+                    removed = removed + 1
+                end
+            end
+            return removed
+            """;
+
+    private RedisScripts() {
+    }
+}
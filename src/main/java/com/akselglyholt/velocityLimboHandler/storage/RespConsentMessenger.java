@@ -0,0 +1,43 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import com.akselglyholt.velocityLimboHandler.storage.redis.RespClient;
+import com.akselglyholt.velocityLimboHandler.storage.redis.RespException;
+import com.akselglyholt.velocityLimboHandler.storage.redis.RespSubscription;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.function.Consumer;
+
+/**
+ * Consent changes sent over Redis pub/sub on the standalone client
+ */
+public class RespConsentMessenger implements ConsentMessenger {
+    private final RespClient client;
+    private final String channel;
+    private RespSubscription subscription;
+
+    public RespConsentMessenger(RespClient client, String channel) {
+        this.client = client;
+        this.channel = channel;
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener, Runnable onResubscribe) {
+        subscription = client.subscribe((ignored, payload) -> listener.accept(new String(payload, StandardCharsets.UTF_8)),
+                onResubscribe, channel);
+    }
+
+    @Override
+    public void publish(String message) throws IOException {
+        try {
+            client.publish(channel, message);
+        } catch (RespException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (subscription != null) subscription.close();
+    }
+}
@@ -0,0 +1,26 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+/**
+ * A group slot held for a player while they're being sent to a server
+ */
+public final class SlotReservation {
+    private final String serverName;
+    private final String token;
+
+    /**
+     * @param serverName The server the slot was reserved on
+     * @param token The token the store handed out for it
+     */
+    public SlotReservation(String serverName, String token) {
+        this.serverName = serverName;
+        this.token = token;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    public String getToken() {
+        return token;
+    }
+}
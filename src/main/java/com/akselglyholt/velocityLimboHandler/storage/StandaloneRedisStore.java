@@ -0,0 +1,532 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import com.akselglyholt.velocityLimboHandler.storage.redis.RespClient;
+import com.akselglyholt.velocityLimboHandler.storage.redis.RespException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+/**
+ * Channel and consent storage on a Redis server of its own, without ValioBungee.
+ * Uses the same keys as the ValioBungee stores, so proxies on either backend can share one Redis.
+ */
+public class StandaloneRedisStore implements AsyncChannelStore, ConsentStore {
+    private static final String CONSENT_SET = "consent";
+    private static final String LAST_GROUP_PREFIX = "player:last-group:";
+    private static final String CHANNEL_COUNT_PREFIX = "channel:count:";
+    private static final String CURRENT_CHANNEL_PREFIX = "player:current-channel:";
+    private static final String RESERVATION_PREFIX = "channel:reservations:";
+    private static final String SHARD_PREFIX = "channel:shards:";
+    private static final String GROUP_SET_KEY = "server-groups";
+    private static final String GROUP_LIST_PREFIX = "server-groups:";
+    private static final String GROUP_META_SUFFIX = ":meta";
+    private static final int ASYNC_THREADS = 4;
+
+    private final RespClient client;
+    private final String keyPrefix;
+    private final Logger logger;
+    private final ExecutorService executor;
+    // Everyone using the store holds a reference, the creator holds the first one
+    private final AtomicInteger references = new AtomicInteger(1);
+    private final ChannelCountMode countMode;
+    private final String proxyId;
+    // Servers whose shard this proxy has reset since it started, only used when sharded
+    private final Set<String> shardedServers = ConcurrentHashMap.newKeySet();
+    // Held while a server's field is reset, so no write to it can land before the reset does
+    private final Map<String, Object> shardResetLocks = new ConcurrentHashMap<>();
+
+    /**
+     * @param config The connection settings
+     * @param keyPrefix The prefix of every key
+     * @param logger The logger failed calls are reported to
+     * @param countMode How channel counts are kept, shared or sharded
+     * @param proxyId The id of this proxy's field in sharded counts
+     * @throws IOException if Redis can't be reached
+     */
+    public StandaloneRedisStore(RedisConfig config, String keyPrefix, Logger logger,
+                                ChannelCountMode countMode, String proxyId) throws IOException {
+        this.logger = logger;
+        this.keyPrefix = keyPrefix == null ? "" : keyPrefix;
+        this.proxyId = proxyId;
+        if (countMode == ChannelCountMode.LEASED) {
+            logger.warning("Leased channel counts need ValioBungee, using shared counts instead.");
+            this.countMode = ChannelCountMode.SHARED;
+        } else {
+            this.countMode = countMode == null ? ChannelCountMode.SHARED : countMode;
+        }
+        this.client = new RespClient(config, logger);
+        client.connect();
+
+        AtomicInteger threadId = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(ASYNC_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "VelocityLimboHandler Redis #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * @return the client, for callers that need pub/sub on the same connection settings
+     */
+    public RespClient getClient() {
+        return client;
+    }
+
+    /**
+     * @return the id this proxy uses in shared keys and messages
+     */
+    public String getProxyId() {
+        return proxyId;
+    }
+
+    private String key(String raw) {
+        if (keyPrefix.isBlank()) {
+            return raw;
+        }
+        return keyPrefix + ":" + raw;
+    }
+
+    // Run one command, failures are logged and turn into a null reply
+    private Object call(Object... args) {
+        try {
+            return client.call(args);
+        } catch (IOException | RespException e) {
+            logger.warning("Redis call failed (" + args[0] + "): " + e.getMessage());
+            return null;
+        }
+    }
+
+    private List<Object> pipeline(List<Object[]> commands) {
+        try {
+            List<Object> replies = client.pipeline(commands);
+            for (int i = 0; i < replies.size(); i++) {
+                if (replies.get(i) instanceof RespException error) {
+                    logger.warning("Redis call failed (" + commands.get(i)[0] + "): " + error.getMessage());
+                    replies.set(i, null);
+                }
+            }
+            return replies;
+        } catch (IOException e) {
+            logger.warning("Redis pipeline failed: " + e.getMessage());
+            return new ArrayList<>();
+        }
+    }
+
+    private Object eval(String script, List<String> keys, List<String> args) {
+        try {
+            return client.eval(script, keys, args);
+        } catch (IOException | RespException e) {
+            logger.warning("Redis call failed (eval): " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static int parseCount(Object value) {
+        if (value instanceof Long number) return number.intValue();
+        String text = RespClient.string(value);
+        if (text == null) return 0;
+        try {
+            return Integer.parseInt(text);
+        } catch (NumberFormatException ignored) {
+            return 0;
+        }
+    }
+
+    @Override
+    public boolean hasConsent(UUID playerId) {
+        Object result = call("SISMEMBER", key(CONSENT_SET), playerId.toString());
+        return result instanceof Long number && number == 1;
+    }
+
+    @Override
+    public void setConsent(UUID playerId, boolean consented) {
+        call(consented ? "SADD" : "SREM", key(CONSENT_SET), playerId.toString());
+    }
+
+    @Override
+    public void setConsents(Map<UUID, Boolean> changes) {
+        List<Object[]> commands = new ArrayList<>();
+        for (Map.Entry<UUID, Boolean> change : changes.entrySet()) {
+            commands.add(new Object[]{change.getValue() ? "SADD" : "SREM", key(CONSENT_SET), change.getKey().toString()});
+        }
+        pipeline(commands);
+    }
+
+    @Override
+    public String getLastGroup(UUID playerId) {
+        return RespClient.string(call("GET", key(LAST_GROUP_PREFIX + playerId)));
+    }
+
+    @Override
+    public void setLastGroup(UUID playerId, String groupName) {
+        if (groupName == null || groupName.isBlank()) {
+            call("DEL", key(LAST_GROUP_PREFIX + playerId));
+        } else {
+            call("SET", key(LAST_GROUP_PREFIX + playerId), groupName);
+        }
+    }
+
+    @Override
+    public void clearLastGroup(UUID playerId) {
+        call("DEL", key(LAST_GROUP_PREFIX + playerId));
+    }
+
+    @Override
+    public int incrementChannelCount(String serverName) {
+        if (countMode == ChannelCountMode.SHARDED) return adjustChannelCount(serverName, 1);
+        return parseCount(call("INCR", key(CHANNEL_COUNT_PREFIX + serverName)));
+    }
+
+    @Override
+    public int decrementChannelCount(String serverName) {
+        return adjustChannelCount(serverName, -1);
+    }
+
+    @Override
+    public int adjustChannelCount(String serverName, int delta) {
+        if (countMode == ChannelCountMode.SHARDED) {
+            return parseCount(eval(RedisScripts.ADJUST_FIELD_WITH_FLOOR, List.of(shardKey(serverName)), shardArgs(serverName, delta)));
+        }
+        return parseCount(eval(RedisScripts.ADJUST_WITH_FLOOR,
+                List.of(key(CHANNEL_COUNT_PREFIX + serverName)), List.of(String.valueOf(delta))));
+    }
+
+    private String shardKey(String serverName) {
+        return key(SHARD_PREFIX + serverName);
+    }
+
+    /**
+     * The arguments of {@link RedisScripts#ADJUST_FIELD_WITH_FLOOR} for this proxy's field of a server's sharded count.
+     * The field is reset before the first write after startup, a restarted proxy starts without players.
+     */
+    private List<String> shardArgs(String serverName, int delta) {
+        resetShard(serverName);
+        return List.of(proxyId, String.valueOf(delta), "0");
+    }
+
+    // Reset this proxy's field once, every other write to the server waits until the reset is done
+    private void resetShard(String serverName) {
+        if (serverName == null || shardedServers.contains(serverName)) return;
+        synchronized (shardResetLocks.computeIfAbsent(serverName, ignored -> new Object())) {
+            if (shardedServers.contains(serverName)) return;
+            eval(RedisScripts.ADJUST_FIELD_WITH_FLOOR, List.of(shardKey(serverName)), List.of(proxyId, "0", "1"));
+            shardedServers.add(serverName);
+        }
+    }
+
+    private Object[] shardCommand(String serverName, int delta) {
+        return client.evalCommand(RedisScripts.ADJUST_FIELD_WITH_FLOOR, List.of(shardKey(serverName)), shardArgs(serverName, delta));
+    }
+
+    @Override
+    public int getChannelCount(String serverName) {
+        if (countMode == ChannelCountMode.SHARDED) return getChannelCounts(List.of(serverName)).getOrDefault(serverName, 0);
+        return parseCount(call("GET", key(CHANNEL_COUNT_PREFIX + serverName)));
+    }
+
+    @Override
+    public Map<String, Integer> getChannelCounts(Collection<String> serverNames) {
+        Map<String, Integer> counts = new HashMap<>();
+        if (serverNames.isEmpty()) return counts;
+
+        List<String> names = new ArrayList<>(serverNames);
+        if (countMode == ChannelCountMode.SHARDED) {
+            // Every proxy's field of each server, one HVALS per server on a single pipeline
+            List<Object[]> commands = new ArrayList<>();
+            for (String serverName : names) {
+                commands.add(new Object[]{"HVALS", shardKey(serverName)});
+            }
+            List<Object> replies = pipeline(commands);
+            for (int i = 0; i < names.size(); i++) {
+                int total = 0;
+                if (i < replies.size() && replies.get(i) instanceof List<?> shards) {
+                    for (Object shard : shards) {
+                        total += Math.max(0, parseCount(shard));
+                    }
+                }
+                counts.put(names.get(i), total);
+            }
+            return counts;
+        }
+
+        Object[] command = new Object[names.size() + 1];
+        command[0] = "MGET";
+        for (int i = 0; i < names.size(); i++) {
+            command[i + 1] = key(CHANNEL_COUNT_PREFIX + names.get(i));
+        }
+
+        List<?> values = call(command) instanceof List<?> list ? list : List.of();
+        for (int i = 0; i < names.size(); i++) {
+            counts.put(names.get(i), i < values.size() ? parseCount(values.get(i)) : 0);
+        }
+        return counts;
+    }
+
+    @Override
+    public String tryReserveSlot(String serverName, int limit, long ttlMillis) {
+        String token = UUID.randomUUID().toString();
+        String countKey = countMode == ChannelCountMode.SHARDED ? shardKey(serverName) : key(CHANNEL_COUNT_PREFIX + serverName);
+        List<String> keys = List.of(countKey, key(RESERVATION_PREFIX + serverName));
+        List<String> args = List.of(String.valueOf(limit), String.valueOf(Math.max(1, ttlMillis)), token,
+                serverName, countMode.name().toLowerCase(Locale.ROOT));
+        return RespClient.string(eval(RedisScripts.RESERVE_SLOT, keys, args));
+    }
+
+    @Override
+    public void releaseSlot(String serverName, String token) {
+        if (token == null) return;
+        call("ZREM", key(RESERVATION_PREFIX + serverName), token);
+    }
+
+    @Override
+    public String getCurrentChannel(UUID playerId) {
+        return RespClient.string(call("GET", key(CURRENT_CHANNEL_PREFIX + playerId)));
+    }
+
+    @Override
+    public void setCurrentChannel(UUID playerId, String serverName) {
+        if (serverName == null || serverName.isBlank()) {
+            call("DEL", key(CURRENT_CHANNEL_PREFIX + playerId));
+        } else {
+            call("SET", key(CURRENT_CHANNEL_PREFIX + playerId), serverName);
+        }
+    }
+
+    @Override
+    public void clearCurrentChannel(UUID playerId) {
+        call("DEL", key(CURRENT_CHANNEL_PREFIX + playerId));
+    }
+
+    @Override
+    public void recordTransfer(UUID playerId, String fromServer, String toServer, String currentChannel, String lastGroup) {
+        List<Object[]> commands = new ArrayList<>();
+        if (countMode == ChannelCountMode.SHARDED) {
+            if (fromServer != null) commands.add(shardCommand(fromServer, -1));
+            if (toServer != null) commands.add(shardCommand(toServer, 1));
+        } else {
+            if (fromServer != null) {
+                commands.add(client.evalCommand(RedisScripts.ADJUST_WITH_FLOOR,
+                        List.of(key(CHANNEL_COUNT_PREFIX + fromServer)), List.of("-1")));
+            }
+            if (toServer != null) {
+                commands.add(new Object[]{"INCR", key(CHANNEL_COUNT_PREFIX + toServer)});
+            }
+        }
+        if (currentChannel == null || currentChannel.isBlank()) {
+            commands.add(new Object[]{"DEL", key(CURRENT_CHANNEL_PREFIX + playerId)});
+        } else {
+            commands.add(new Object[]{"SET", key(CURRENT_CHANNEL_PREFIX + playerId), currentChannel});
+        }
+        if (lastGroup != null && !lastGroup.isBlank()) {
+            commands.add(new Object[]{"SET", key(LAST_GROUP_PREFIX + playerId), lastGroup});
+        }
+        pipeline(commands);
+    }
+
+    @Override
+    public void storeGroups(Iterable<String> groupNames) {
+        List<Object[]> commands = new ArrayList<>();
+        writeGroups(commands, groupNames);
+        pipeline(commands);
+    }
+
+    @Override
+    public void storeGroupServers(String groupName, Iterable<String> servers) {
+        if (groupName == null || groupName.isBlank()) return;
+        List<Object[]> commands = new ArrayList<>();
+        writeGroupServers(commands, groupName, servers);
+        pipeline(commands);
+    }
+
+    @Override
+    public void storeGroupMaxPlayers(String groupName, int maxPlayers) {
+        if (groupName == null || groupName.isBlank()) return;
+        List<Object[]> commands = new ArrayList<>();
+        writeGroupMaxPlayers(commands, groupName, maxPlayers);
+        pipeline(commands);
+    }
+
+    @Override
+    public void storeGroupLayout(Map<String, List<String>> groupServers, Map<String, Integer> groupMaxPlayers) {
+        if (countMode == ChannelCountMode.SHARDED) {
+            // Clear what a crashed run of this proxy left behind, also on servers it won't write to again
+            for (List<String> servers : groupServers.values()) {
+                for (String serverName : servers) {
+                    resetShard(serverName);
+                }
+            }
+        }
+
+        List<Object[]> commands = new ArrayList<>();
+        writeGroups(commands, groupServers.keySet());
+        for (Map.Entry<String, List<String>> entry : groupServers.entrySet()) {
+            if (entry.getKey() == null || entry.getKey().isBlank()) continue;
+            writeGroupServers(commands, entry.getKey(), entry.getValue());
+            writeGroupMaxPlayers(commands, entry.getKey(), groupMaxPlayers.getOrDefault(entry.getKey(), 0));
+        }
+        pipeline(commands);
+    }
+
+    private void writeGroups(List<Object[]> commands, Iterable<String> groupNames) {
+        commands.add(new Object[]{"DEL", key(GROUP_SET_KEY)});
+        List<String> members = nonBlank(groupNames);
+        if (!members.isEmpty()) {
+            commands.add(withMembers("SADD", key(GROUP_SET_KEY), members));
+        }
+    }
+
+    private void writeGroupServers(List<Object[]> commands, String groupName, Iterable<String> servers) {
+        String listKey = key(GROUP_LIST_PREFIX + groupName);
+        commands.add(new Object[]{"DEL", listKey});
+        List<String> members = nonBlank(servers);
+        if (!members.isEmpty()) {
+            commands.add(withMembers("RPUSH", listKey, members));
+        }
+    }
+
+    private void writeGroupMaxPlayers(List<Object[]> commands, String groupName, int maxPlayers) {
+        commands.add(new Object[]{"HSET", key(GROUP_LIST_PREFIX + groupName + GROUP_META_SUFFIX),
+                "max-player", String.valueOf(maxPlayers)});
+    }
+
+    private static Object[] withMembers(String command, String key, List<String> members) {
+        Object[] parts = new Object[members.size() + 2];
+        parts[0] = command;
+        parts[1] = key;
+        for (int i = 0; i < members.size(); i++) {
+            parts[i + 2] = members.get(i);
+        }
+        return parts;
+    }
+
+    private static List<String> nonBlank(Iterable<String> values) {
+        List<String> list = new ArrayList<>();
+        if (values != null) {
+            for (String value : values) {
+                if (value != null && !value.isBlank()) list.add(value);
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void recordShutdown(Collection<ChannelDeparture> departures) {
+        // One change per server instead of one per player
+        Map<String, Integer> deltas = new HashMap<>();
+        for (ChannelDeparture departure : departures) {
+            if (departure.getFromServer() != null) deltas.merge(departure.getFromServer(), -1, Integer::sum);
+        }
+
+        List<Object[]> commands = new ArrayList<>();
+        if (countMode == ChannelCountMode.SHARDED) {
+            // All of this proxy's players are leaving, so its fields can go as a whole
+            Set<String> ownShards = new HashSet<>(shardedServers);
+            ownShards.addAll(deltas.keySet());
+            shardedServers.clear();
+            for (String serverName : ownShards) {
+                commands.add(new Object[]{"HDEL", shardKey(serverName), proxyId});
+            }
+        } else {
+            for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+                commands.add(client.evalCommand(RedisScripts.ADJUST_WITH_FLOOR,
+                        List.of(key(CHANNEL_COUNT_PREFIX + delta.getKey())), List.of(String.valueOf(delta.getValue()))));
+            }
+        }
+
+        for (ChannelDeparture departure : departures) {
+            commands.add(new Object[]{"DEL", key(CURRENT_CHANNEL_PREFIX + departure.getPlayerId())});
+            String lastGroup = departure.getLastGroup();
+            if (lastGroup != null && !lastGroup.isBlank()) {
+                commands.add(new Object[]{"SET", key(LAST_GROUP_PREFIX + departure.getPlayerId()), lastGroup});
+            }
+        }
+        pipeline(commands);
+    }
+
+    private <T> CompletableFuture<T> async(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    @Override
+    public CompletableFuture<String> getLastGroupAsync(UUID playerId) {
+        return async(() -> getLastGroup(playerId));
+    }
+
+    @Override
+    public CompletableFuture<String> getCurrentChannelAsync(UUID playerId) {
+        return async(() -> getCurrentChannel(playerId));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Integer>> getChannelCountsAsync(Collection<String> serverNames) {
+        return async(() -> getChannelCounts(serverNames));
+    }
+
+    @Override
+    public CompletableFuture<Void> recordTransferAsync(UUID playerId, String fromServer, String toServer,
+                                                       String currentChannel, String lastGroup) {
+        return CompletableFuture.runAsync(() -> recordTransfer(playerId, fromServer, toServer, currentChannel, lastGroup), executor);
+    }
+
+    @Override
+    public CompletableFuture<String> tryReserveSlotAsync(String serverName, int limit, long ttlMillis) {
+        return async(() -> tryReserveSlot(serverName, limit, ttlMillis));
+    }
+
+    @Override
+    public CompletableFuture<Void> releaseSlotAsync(String serverName, String token) {
+        return CompletableFuture.runAsync(() -> releaseSlot(serverName, token), executor);
+    }
+
+    /**
+     * Take another reference to the store, it stays open until every reference was closed
+     * @return this store
+     */
+    public StandaloneRedisStore retain() {
+        references.incrementAndGet();
+        return this;
+    }
+
+    // The same instance may serve as both the channel and the consent store, only the last close counts
+    @Override
+    public void close() {
+        if (references.decrementAndGet() != 0) return;
+
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for pending Redis writes to finish.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        if (countMode == ChannelCountMode.SHARDED && !shardedServers.isEmpty()) {
+            // Drop this proxy's fields, its players are gone now
+            List<Object[]> commands = new ArrayList<>();
+            for (String serverName : shardedServers) {
+                commands.add(new Object[]{"HDEL", shardKey(serverName), proxyId});
+            }
+            pipeline(commands);
+        }
+        client.close();
+    }
+}
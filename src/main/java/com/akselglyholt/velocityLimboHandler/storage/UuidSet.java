@@ -0,0 +1,245 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import java.util.Collection;
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A set of UUIDs stored as pairs of longs in one open addressing table.
+ * Every entry takes 16 bytes of table instead of a boxed UUID and a hash map node,
+ * which matters once millions of players are kept in memory.
+ * Reads are lock free unless they overlap a write, writes are serialized.
+ */
+public final class UuidSet {
+    private static final int MIN_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private final StampedLock lock = new StampedLock();
+    // Slot i holds the most significant bits at 2i and the least significant bits at 2i + 1, zero is empty
+    private long[] table;
+    private int mask;
+    private int size;
+    // The nil UUID is all zeros, the same as an empty slot, so it's tracked on its own
+    private boolean containsNil;
+
+    public UuidSet() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * @param expectedSize How many players the set should hold before it has to grow
+     */
+    public UuidSet(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(0, expectedSize) / (double) LOAD_FACTOR);
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed) {
+            if (capacity >= 1 << 29) throw new IllegalStateException("UuidSet can't grow past " + capacity + " slots");
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private void allocate(int capacity) {
+        table = new long[capacity * 2];
+        mask = capacity - 1;
+    }
+
+    private static int hash(long most, long least) {
+        long h = most * 0x9E3779B97F4A7C15L ^ least;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    public boolean contains(UUID playerId) {
+        long most = playerId.getMostSignificantBits();
+        long least = playerId.getLeastSignificantBits();
+
+        long stamp = lock.tryOptimisticRead();
+        boolean found = containsUnlocked(most, least);
+        if (lock.validate(stamp)) return found;
+
+        // A write got in the way, read again while writes are held off
+        stamp = lock.readLock();
+        try {
+            return containsUnlocked(most, least);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    // May see a table that's being changed, callers validate the result
+    private boolean containsUnlocked(long most, long least) {
+        if (most == 0 && least == 0) return containsNil;
+
+        long[] current = table;
+        int currentMask = current.length / 2 - 1;
+        int slot = hash(most, least) & currentMask;
+        // Bounded by the table size, so a torn read can't loop forever
+        for (int probes = 0; probes <= currentMask; probes++) {
+            long slotMost = current[slot * 2];
+            long slotLeast = current[slot * 2 + 1];
+            if (slotMost == most && slotLeast == least) return true;
+            if (slotMost == 0 && slotLeast == 0) return false;
+            slot = (slot + 1) & currentMask;
+        }
+        return false;
+    }
+
+    /**
+     * @param playerId The player to add
+     * @return true if the player wasn't in the set yet
+     */
+    public boolean add(UUID playerId) {
+        long stamp = lock.writeLock();
+        try {
+            return insert(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits());
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Add many players under one lock, growing the table once up front
+     * @param playerIds The players to add
+     * @return how many of them weren't in the set yet
+     */
+    public int addAll(Collection<UUID> playerIds) {
+        long stamp = lock.writeLock();
+        try {
+            int needed = capacityFor(size + playerIds.size());
+            if (needed > mask + 1) rehash(needed);
+
+            int added = 0;
+            for (UUID playerId : playerIds) {
+                if (insert(playerId.getMostSignificantBits(), playerId.getLeastSignificantBits())) added++;
+            }
+            return added;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Must hold the write lock
+    private boolean insert(long most, long least) {
+        if (most == 0 && least == 0) {
+            if (containsNil) return false;
+            containsNil = true;
+            size++;
+            return true;
+        }
+
+        int slot = hash(most, least) & mask;
+        while (true) {
+            long slotMost = table[slot * 2];
+            long slotLeast = table[slot * 2 + 1];
+            if (slotMost == most && slotLeast == least) return false;
+            if (slotMost == 0 && slotLeast == 0) break;
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot * 2] = most;
+        table[slot * 2 + 1] = least;
+        size++;
+        if (size > (mask + 1) * LOAD_FACTOR) rehash((mask + 1) * 2);
+        return true;
+    }
+
+    /**
+     * @param playerId The player to remove
+     * @return true if the player was in the set
+     */
+    public boolean remove(UUID playerId) {
+        long most = playerId.getMostSignificantBits();
+        long least = playerId.getLeastSignificantBits();
+
+        long stamp = lock.writeLock();
+        try {
+            if (most == 0 && least == 0) {
+                if (!containsNil) return false;
+                containsNil = false;
+                size--;
+                return true;
+            }
+
+            int slot = hash(most, least) & mask;
+            while (true) {
+                long slotMost = table[slot * 2];
+                long slotLeast = table[slot * 2 + 1];
+                if (slotMost == 0 && slotLeast == 0) return false;
+                if (slotMost == most && slotLeast == least) break;
+                slot = (slot + 1) & mask;
+            }
+            shiftBack(slot);
+            size--;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    // Close the gap left at the slot by moving later entries of the same probe run back, so no tombstones are needed
+    private void shiftBack(int gap) {
+        int slot = gap;
+        while (true) {
+            slot = (slot + 1) & mask;
+            long slotMost = table[slot * 2];
+            long slotLeast = table[slot * 2 + 1];
+            if (slotMost == 0 && slotLeast == 0) break;
+
+            int home = hash(slotMost, slotLeast) & mask;
+            // Only move the entry if its home slot isn't between the gap and where it sits now
+            boolean movable = gap <= slot ? home <= gap || home > slot : home <= gap && home > slot;
+            if (movable) {
+                table[gap * 2] = slotMost;
+                table[gap * 2 + 1] = slotLeast;
+                gap = slot;
+            }
+        }
+        table[gap * 2] = 0;
+        table[gap * 2 + 1] = 0;
+    }
+
+    // Must hold the write lock
+    private void rehash(int capacity) {
+        long[] old = table;
+        allocate(capacity);
+        for (int i = 0; i < old.length; i += 2) {
+            long most = old[i];
+            long least = old[i + 1];
+            if (most == 0 && least == 0) continue;
+
+            int slot = hash(most, least) & mask;
+            while (table[slot * 2] != 0 || table[slot * 2 + 1] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot * 2] = most;
+            table[slot * 2 + 1] = least;
+        }
+    }
+
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return size;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public void clear() {
+        long stamp = lock.writeLock();
+        try {
+            allocate(MIN_CAPACITY);
+            size = 0;
+            containsNil = false;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+}
@@ -1,30 +1,90 @@
 package com.akselglyholt.velocityLimboHandler.storage;
 
 import com.imaginarycode.minecraft.redisbungee.AbstractRedisBungeeAPI;
-import java.lang.reflect.Method;
+import com.imaginarycode.minecraft.redisbungee.api.summoners.Summoner;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
-public class ValioBungeeChannelStore implements ChannelStore {
+public class ValioBungeeChannelStore implements AsyncChannelStore {
     private static final String LAST_GROUP_PREFIX = "player:last-group:";
     private static final String CHANNEL_COUNT_PREFIX = "channel:count:";
     private static final String CURRENT_CHANNEL_PREFIX = "player:current-channel:";
     private static final String GROUP_SET_KEY = "server-groups";
     private static final String GROUP_LIST_PREFIX = "server-groups:";
     private static final String GROUP_META_SUFFIX = ":meta";
+    private static final String LEASE_PREFIX = "channel:lease:";
+    private static final String LEASE_SET_KEY = "channel:leases";
+    private static final String RESERVATION_PREFIX = "channel:reservations:";
+    private static final String SHARD_PREFIX = "channel:shards:";
+    // Kept in every live lease, so a proxy without players still has one
+    static final String LEASE_ALIVE_FIELD = "~alive";
+    private static final int ASYNC_THREADS = 4;
 
     private final AbstractRedisBungeeAPI api;
     private final String keyPrefix;
     private final Logger logger;
+    private final ScheduledExecutorService executor;
+    private final ChannelCountMode countMode;
+    private final String proxyId;
+    private final long leaseTtlSeconds;
+    // This proxy's own contribution to each server's count, only used when leased
+    private final Map<String, AtomicInteger> localCounts = new ConcurrentHashMap<>();
+    // Servers whose shard this proxy has reset since it started, only used when sharded
+    private final Set<String> shardedServers = ConcurrentHashMap.newKeySet();
+    // Held while a server's field is reset, so no write to it can land before the reset does
+    private final Map<String, Object> shardResetLocks = new ConcurrentHashMap<>();
 
     public ValioBungeeChannelStore(String keyPrefix, Logger logger) {
+        this(keyPrefix, logger, ChannelCountMode.SHARED, 0);
+    }
+
+    /**
+     * @param keyPrefix The prefix of every key
+     * @param logger The logger failed calls are reported to
+     * @param countMode How channel counts are kept
+     * @param leaseTtlMillis How long a proxy's counts outlive its last heartbeat, when leased
+     */
+    public ValioBungeeChannelStore(String keyPrefix, Logger logger, ChannelCountMode countMode, long leaseTtlMillis) {
         this.logger = logger;
         this.keyPrefix = keyPrefix == null ? "" : keyPrefix;
         this.api = AbstractRedisBungeeAPI.getAbstractRedisBungeeAPI();
         if (this.api == null) {
             throw new IllegalStateException("ValioBungee API not available.");
         }
+        this.countMode = countMode == null ? ChannelCountMode.SHARED : countMode;
+        this.proxyId = api.getProxyId();
+        this.leaseTtlSeconds = Math.max(1, TimeUnit.MILLISECONDS.toSeconds(leaseTtlMillis + 999));
+
+        // Redis calls for the async methods run here instead of on the caller's thread
+        AtomicInteger threadId = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(ASYNC_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "VelocityLimboHandler Redis #" + threadId.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        if (this.countMode == ChannelCountMode.LEASED) {
+            // Renew well before the lease runs out, so one missed beat doesn't drop the counts
+            long heartbeatMillis = Math.max(1000, TimeUnit.SECONDS.toMillis(leaseTtlSeconds) / 3);
+            executor.scheduleAtFixedRate(this::heartbeat, 0, heartbeatMillis, TimeUnit.MILLISECONDS);
+        }
     }
 
     private String key(String raw) {
@@ -34,64 +94,48 @@ public class ValioBungeeChannelStore implements ChannelStore {
         return keyPrefix + ":" + raw;
     }
 
-    private Object getSummoner() {
-        return invoke(api, "getSummoner", new Class<?>[]{});
+    @FunctionalInterface
+    private interface RedisCall {
+        Object call(JedisCommands commands, Object client) throws Throwable;
     }
 
-    private Object invoke(Object jedis, String method, Class<?>[] types, Object... args) {
+    // Run a command through the cached adapter of the client's class
+    private Object run(Object client, String command, RedisCall call) {
         try {
-            Method m = jedis.getClass().getMethod(method, types);
-            return m.invoke(jedis, args);
-        } catch (Exception e) {
-            logger.warning("ValioBungee Redis call failed (" + method + "): " + e.getMessage());
+            return call.call(JedisCommands.of(client), client);
+        } catch (Throwable e) {
+            logger.warning("ValioBungee Redis call failed (" + command + "): " + e.getMessage());
             return null;
         }
     }
 
-    private boolean deleteKey(Object jedis, String key) {
-        if (jedis == null || key == null) return false;
-        try {
-            Method[] methods = jedis.getClass().getMethods();
-            for (Method method : methods) {
-                if (!method.getName().equals("del")) continue;
-                Class<?>[] params = method.getParameterTypes();
-                if (params.length != 1) continue;
-                if (params[0] == String.class) {
-                    method.invoke(jedis, key);
-                    return true;
-                }
-                if (params[0].isArray() && params[0].getComponentType() == String.class) {
-                    method.invoke(jedis, new Object[]{new String[]{key}});
-                    return true;
-                }
-            }
-            return false;
-        } catch (Exception e) {
-            logger.warning("ValioBungee Redis call failed (del): " + e.getMessage());
-            return false;
-        }
+    private void deleteKey(Object jedis, String key) {
+        if (jedis == null || key == null) return;
+        run(jedis, "del", (commands, client) -> commands.del(client, key));
     }
 
     private Object obtainResource() {
-        Object summoner = getSummoner();
+        Summoner<?> summoner = api.getSummoner();
         if (summoner == null) {
             logger.warning("ValioBungee summoner is null.");
             return null;
         }
-        return invoke(summoner, "obtainResource", new Class<?>[]{});
+        try {
+            return summoner.obtainResource();
+        } catch (RuntimeException e) {
+            logger.warning("ValioBungee Redis call failed (obtainResource): " + e.getMessage());
+            return null;
+        }
     }
 
     private void closeResource(Object resource) {
-        if (resource == null) return;
         if (resource instanceof AutoCloseable closeable) {
             try {
                 closeable.close();
             } catch (Exception e) {
                 logger.warning("Failed to close Redis resource: " + e.getMessage());
             }
-            return;
         }
-        invoke(resource, "close", new Class<?>[]{});
     }
 
     private Object withResource(Function<Object, Object> fn) {
@@ -104,10 +148,44 @@ public class ValioBungeeChannelStore implements ChannelStore {
         }
     }
 
+    /**
+     * Queue commands on a pipeline and send them in one round trip
+     * @param jedis The Redis resource
+     * @param commands Issues the commands on the target it's given, returning what each call returned
+     * @return the command results in order, or the direct results if pipelining isn't available
+     */
+    private List<Object> pipelined(Object jedis, Function<Object, List<Object>> commands) {
+        Object pipeline = run(jedis, "pipelined", JedisCommands::pipelined);
+        if (pipeline == null) {
+            return commands.apply(jedis);
+        }
+
+        List<Object> responses = commands.apply(pipeline);
+        run(pipeline, "sync", (pipelineCommands, client) -> {
+            pipelineCommands.sync(client);
+            return null;
+        });
+
+        List<Object> results = new ArrayList<>(responses.size());
+        for (Object response : responses) {
+            results.add(response == null ? null : run(response, "get", JedisCommands::value));
+        }
+        return results;
+    }
+
+    private static int parseCount(Object value) {
+        if (value == null) return 0;
+        try {
+            return Integer.parseInt(String.valueOf(value));
+        } catch (NumberFormatException ignored) {
+            return 0;
+        }
+    }
+
     @Override
     public String getLastGroup(UUID playerId) {
-        Object result = withResource(jedis -> invoke(jedis, "get", new Class<?>[]{String.class},
-                key(LAST_GROUP_PREFIX + playerId)));
+        Object result = withResource(jedis -> run(jedis, "get", (commands, client) ->
+                commands.get(client, key(LAST_GROUP_PREFIX + playerId))));
         return result == null ? null : String.valueOf(result);
     }
 
@@ -117,8 +195,8 @@ public class ValioBungeeChannelStore implements ChannelStore {
             if (groupName == null || groupName.isBlank()) {
                 deleteKey(jedis, key(LAST_GROUP_PREFIX + playerId));
             } else {
-                invoke(jedis, "set", new Class<?>[]{String.class, String.class},
-                        key(LAST_GROUP_PREFIX + playerId), groupName);
+                run(jedis, "set", (commands, client) ->
+                        commands.set(client, key(LAST_GROUP_PREFIX + playerId), groupName));
             }
             return null;
         });
@@ -132,10 +210,117 @@ public class ValioBungeeChannelStore implements ChannelStore {
         });
     }
 
+    private String leaseKey(String proxy) {
+        return key(LEASE_PREFIX + proxy);
+    }
+
+    /**
+     * Rewrite this proxy's lease from its local counts and renew its expiry.
+     * Redis state that drifted from the local counts, or was lost, is fixed by the next beat.
+     */
+    public void heartbeat() {
+        if (countMode != ChannelCountMode.LEASED) return;
+        Map<String, Integer> values = new HashMap<>();
+        for (Map.Entry<String, AtomicInteger> entry : localCounts.entrySet()) {
+            int value = entry.getValue().get();
+            if (value > 0) values.put(entry.getKey(), value);
+        }
+        // Replaced in one script, a reader never sees the lease half written
+        withResource(jedis -> writeLease(jedis, values, true));
+    }
+
+    // Change this proxy's count locally, then write the new value into its lease
+    private int adjustLease(Map<String, Integer> deltas) {
+        Map<String, Integer> values = new HashMap<>();
+        for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+            values.put(delta.getKey(), adjustLocal(delta.getKey(), delta.getValue()));
+        }
+
+        withResource(jedis -> {
+            pipelined(jedis, target -> {
+                writeLease(target, values, false);
+                return List.of();
+            });
+            return null;
+        });
+        return values.size() == 1 ? values.values().iterator().next() : 0;
+    }
+
+    private int adjustLocal(String serverName, int delta) {
+        return localCounts.computeIfAbsent(serverName, name -> new AtomicInteger())
+                .updateAndGet(current -> Math.max(0, current + delta));
+    }
+
+    // Absolute values rather than increments, so a failed write can't leave the lease off by one.
+    // Every write registers the proxy again, in case it was pruned while its lease was gone
+    private Object writeLease(Object target, Map<String, Integer> values, boolean replace) {
+        List<String> args = new ArrayList<>();
+        args.add(proxyId);
+        args.add(String.valueOf(leaseTtlSeconds));
+        args.add(replace ? "1" : "0");
+        for (Map.Entry<String, Integer> entry : values.entrySet()) {
+            args.add(entry.getKey());
+            args.add(String.valueOf(entry.getValue()));
+        }
+        return run(target, "eval", (commands, client) -> commands.eval(client, RedisScripts.WRITE_LEASE,
+                List.of(leaseKey(proxyId), key(LEASE_SET_KEY)), args));
+    }
+
+    // Sum the counts of every proxy whose lease is still alive
+    private Map<String, Integer> sumLeases(Collection<String> serverNames) {
+        Map<String, Integer> totals = new HashMap<>();
+        for (String serverName : serverNames) {
+            totals.put(serverName, 0);
+        }
+        if (serverNames.isEmpty()) return totals;
+
+        withResource(jedis -> {
+            Object members = run(jedis, "smembers", (commands, client) -> commands.smembers(client, key(LEASE_SET_KEY)));
+            if (!(members instanceof Collection<?> collection) || collection.isEmpty()) return null;
+
+            List<String> proxies = new ArrayList<>();
+            for (Object member : collection) {
+                proxies.add(String.valueOf(member));
+            }
+            List<Object> leases = pipelined(jedis, target -> {
+                List<Object> responses = new ArrayList<>();
+                for (String proxy : proxies) {
+                    responses.add(run(target, "hgetAll", (commands, client) -> commands.hgetAll(client, leaseKey(proxy))));
+                }
+                return responses;
+            });
+
+            List<String> missing = new ArrayList<>();
+            for (int i = 0; i < proxies.size(); i++) {
+                Object lease = i < leases.size() ? leases.get(i) : null;
+                if (!(lease instanceof Map<?, ?> counts) || counts.isEmpty()) {
+                    missing.add(proxies.get(i));
+                    continue;
+                }
+                for (String serverName : serverNames) {
+                    totals.merge(serverName, parseCount(counts.get(serverName)), Integer::sum);
+                }
+            }
+
+            // Proxies that stopped beating are forgotten, but only after Redis confirms their lease expired
+            if (!missing.isEmpty()) {
+                List<String> keys = new ArrayList<>();
+                keys.add(key(LEASE_SET_KEY));
+                for (String proxy : missing) {
+                    keys.add(leaseKey(proxy));
+                }
+                run(jedis, "eval", (commands, client) -> commands.eval(client, RedisScripts.PRUNE_LEASES, keys, missing));
+            }
+            return null;
+        });
+        return totals;
+    }
+
     @Override
     public int incrementChannelCount(String serverName) {
-        Object result = withResource(jedis -> invoke(jedis, "incr", new Class<?>[]{String.class},
-                key(CHANNEL_COUNT_PREFIX + serverName)));
+        if (countMode != ChannelCountMode.SHARED) return adjustChannelCount(serverName, 1);
+        Object result = withResource(jedis -> run(jedis, "incr", (commands, client) ->
+                commands.incr(client, key(CHANNEL_COUNT_PREFIX + serverName))));
         if (result instanceof Number) {
             return ((Number) result).intValue();
         }
@@ -144,36 +329,303 @@ public class ValioBungeeChannelStore implements ChannelStore {
 
     @Override
     public int decrementChannelCount(String serverName) {
-        Object result = withResource(jedis -> invoke(jedis, "decr", new Class<?>[]{String.class},
-                key(CHANNEL_COUNT_PREFIX + serverName)));
-        int value = result instanceof Number ? ((Number) result).intValue() : 0;
-        if (value < 0) {
-            withResource(jedis -> {
-                invoke(jedis, "set", new Class<?>[]{String.class, String.class},
-                        key(CHANNEL_COUNT_PREFIX + serverName), "0");
-                return null;
-            });
-            return 0;
+        return adjustChannelCount(serverName, -1);
+    }
+
+    @Override
+    public int adjustChannelCount(String serverName, int delta) {
+        if (countMode == ChannelCountMode.LEASED) return adjustLease(Map.of(serverName, delta));
+        if (countMode == ChannelCountMode.SHARDED) resetShard(serverName);
+        Object result = withResource(jedis -> countMode == ChannelCountMode.SHARDED
+                ? adjustShard(jedis, serverName, delta)
+                : adjustWithFloor(jedis, serverName, delta));
+        return result instanceof Number number ? number.intValue() : 0;
+    }
+
+    private String shardKey(String serverName) {
+        return key(SHARD_PREFIX + serverName);
+    }
+
+    /**
+     * Add to this proxy's field of a server's sharded count and clamp it at 0.
+     * Callers reset the field first with {@link #resetShard(String)}.
+     * @return the new value of this proxy's field
+     */
+    private Object adjustShard(Object target, String serverName, int delta) {
+        return run(target, "eval", (commands, client) -> commands.eval(client, RedisScripts.ADJUST_FIELD_WITH_FLOOR,
+                List.of(shardKey(serverName)), List.of(proxyId, String.valueOf(delta), "0")));
+    }
+
+    /**
+     * Reset this proxy's field of a server's sharded count once after startup, a restarted proxy starts without players.
+     * Every other write to the server waits until the reset is done, so none of them can be wiped by it.
+     */
+    private void resetShard(String serverName) {
+        if (serverName == null || shardedServers.contains(serverName)) return;
+        synchronized (shardResetLocks.computeIfAbsent(serverName, ignored -> new Object())) {
+            if (shardedServers.contains(serverName)) return;
+            withResource(jedis -> run(jedis, "eval", (commands, client) -> commands.eval(client, RedisScripts.ADJUST_FIELD_WITH_FLOOR,
+                    List.of(shardKey(serverName)), List.of(proxyId, "0", "1"))));
+            shardedServers.add(serverName);
+        }
+    }
+
+    // Sum every proxy's field of each server's sharded count, one HVALS per server on a single pipeline
+    private Map<String, Integer> sumShards(Collection<String> serverNames) {
+        Map<String, Integer> totals = new HashMap<>();
+        List<String> names = new ArrayList<>(serverNames);
+        Object values = withResource(jedis -> pipelined(jedis, target -> {
+            List<Object> responses = new ArrayList<>();
+            for (String serverName : names) {
+                responses.add(run(target, "hvals", (commands, client) -> commands.hvals(client, shardKey(serverName))));
+            }
+            return responses;
+        }));
+
+        List<?> results = values instanceof List<?> list ? list : List.of();
+        for (int i = 0; i < names.size(); i++) {
+            int total = 0;
+            if (i < results.size() && results.get(i) instanceof Collection<?> shards) {
+                for (Object shard : shards) {
+                    total += Math.max(0, parseCount(shard));
+                }
+            }
+            totals.put(names.get(i), total);
         }
-        return value;
+        return totals;
+    }
+
+    // Add to a shared count and clamp it at 0 in one atomic step
+    private Object adjustWithFloor(Object target, String serverName, int delta) {
+        return run(target, "eval", (commands, client) -> commands.eval(client, RedisScripts.ADJUST_WITH_FLOOR,
+                List.of(key(CHANNEL_COUNT_PREFIX + serverName)), List.of(String.valueOf(delta))));
+    }
+
+    @Override
+    public String tryReserveSlot(String serverName, int limit, long ttlMillis) {
+        String token = UUID.randomUUID().toString();
+        String countKey = countMode == ChannelCountMode.SHARDED ? shardKey(serverName) : key(CHANNEL_COUNT_PREFIX + serverName);
+        List<String> args = List.of(String.valueOf(limit), String.valueOf(Math.max(1, ttlMillis)), token,
+                serverName, countMode.name().toLowerCase(Locale.ROOT));
+
+        Object result = withResource(jedis -> {
+            List<String> keys = new ArrayList<>(List.of(countKey, key(RESERVATION_PREFIX + serverName)));
+            if (countMode == ChannelCountMode.LEASED) {
+                // Scripts may only touch the keys they're given, so the leases to sum are looked up first.
+                // A proxy that registers in between is left out of this one check.
+                Object members = run(jedis, "smembers", (commands, client) -> commands.smembers(client, key(LEASE_SET_KEY)));
+                if (members instanceof Collection<?> proxies) {
+                    for (Object proxy : proxies) {
+                        keys.add(leaseKey(String.valueOf(proxy)));
+                    }
+                }
+            }
+            return run(jedis, "eval", (commands, client) -> commands.eval(client, RedisScripts.RESERVE_SLOT, keys, args));
+        });
+        return result == null ? null : String.valueOf(result);
+    }
+
+    @Override
+    public void releaseSlot(String serverName, String token) {
+        if (token == null) return;
+        withResource(jedis -> run(jedis, "zrem", (commands, client) ->
+                commands.zrem(client, key(RESERVATION_PREFIX + serverName), new String[]{token})));
     }
 
     @Override
     public int getChannelCount(String serverName) {
-        Object result = withResource(jedis -> invoke(jedis, "get", new Class<?>[]{String.class},
-                key(CHANNEL_COUNT_PREFIX + serverName)));
-        if (result == null) return 0;
+        if (countMode != ChannelCountMode.SHARED) return getChannelCounts(List.of(serverName)).getOrDefault(serverName, 0);
+        Object result = withResource(jedis -> run(jedis, "get", (commands, client) ->
+                commands.get(client, key(CHANNEL_COUNT_PREFIX + serverName))));
+        return parseCount(result);
+    }
+
+    @Override
+    public Map<String, Integer> getChannelCounts(Collection<String> serverNames) {
+        Map<String, Integer> counts = new HashMap<>();
+        if (serverNames.isEmpty()) return counts;
+        if (countMode == ChannelCountMode.LEASED) return sumLeases(serverNames);
+        if (countMode == ChannelCountMode.SHARDED) return sumShards(serverNames);
+
+        List<String> names = new ArrayList<>(serverNames);
+        String[] keys = new String[names.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = key(CHANNEL_COUNT_PREFIX + names.get(i));
+        }
+
+        Object result = withResource(jedis -> run(jedis, "mget", (commands, client) -> commands.mget(client, keys)));
+        List<?> values = result instanceof List<?> list ? list : List.of();
+        for (int i = 0; i < names.size(); i++) {
+            counts.put(names.get(i), i < values.size() ? parseCount(values.get(i)) : 0);
+        }
+        return counts;
+    }
+
+    @Override
+    public void recordTransfer(UUID playerId, String fromServer, String toServer, String currentChannel, String lastGroup) {
+        boolean leased = countMode == ChannelCountMode.LEASED;
+        Map<String, Integer> leaseValues = new HashMap<>();
+        if (leased) {
+            if (fromServer != null) leaseValues.put(fromServer, adjustLocal(fromServer, -1));
+            if (toServer != null) leaseValues.put(toServer, adjustLocal(toServer, 1));
+        }
+
+        if (countMode == ChannelCountMode.SHARDED) {
+            resetShard(fromServer);
+            resetShard(toServer);
+        }
+
+        withResource(jedis -> {
+            pipelined(jedis, target -> {
+                if (leased) {
+                    if (!leaseValues.isEmpty()) writeLease(target, leaseValues, false);
+                } else if (countMode == ChannelCountMode.SHARDED) {
+                    if (fromServer != null) adjustShard(target, fromServer, -1);
+                    if (toServer != null) adjustShard(target, toServer, 1);
+                } else {
+                    if (fromServer != null) adjustWithFloor(target, fromServer, -1);
+                    if (toServer != null) {
+                        run(target, "incr", (commands, client) ->
+                                commands.incr(client, key(CHANNEL_COUNT_PREFIX + toServer)));
+                    }
+                }
+                if (currentChannel == null || currentChannel.isBlank()) {
+                    deleteKey(target, key(CURRENT_CHANNEL_PREFIX + playerId));
+                } else {
+                    run(target, "set", (commands, client) ->
+                            commands.set(client, key(CURRENT_CHANNEL_PREFIX + playerId), currentChannel));
+                }
+                if (lastGroup != null && !lastGroup.isBlank()) {
+                    run(target, "set", (commands, client) ->
+                            commands.set(client, key(LAST_GROUP_PREFIX + playerId), lastGroup));
+                }
+                return List.of();
+            });
+            return null;
+        });
+    }
+
+    @Override
+    public void recordShutdown(Collection<ChannelDeparture> departures) {
+        // One change per server instead of one per player
+        Map<String, Integer> deltas = new HashMap<>();
+        for (ChannelDeparture departure : departures) {
+            if (departure.getFromServer() != null) deltas.merge(departure.getFromServer(), -1, Integer::sum);
+        }
+
+        Set<String> ownShards = new HashSet<>();
+        if (countMode == ChannelCountMode.SHARDED) {
+            ownShards.addAll(shardedServers);
+            ownShards.addAll(deltas.keySet());
+            shardedServers.clear();
+        }
+
+        withResource(jedis -> pipelined(jedis, target -> {
+            switch (countMode) {
+                case SHARDED -> {
+                    // All of this proxy's players are leaving, so its fields can go as a whole
+                    for (String serverName : ownShards) {
+                        run(target, "hdel", (commands, client) ->
+                                commands.hdel(client, shardKey(serverName), new String[]{proxyId}));
+                    }
+                }
+                case LEASED -> {
+                    localCounts.clear();
+                    deleteKey(target, leaseKey(proxyId));
+                    run(target, "srem", (commands, client) ->
+                            commands.srem(client, key(LEASE_SET_KEY), new String[]{proxyId}));
+                }
+                default -> {
+                    for (Map.Entry<String, Integer> delta : deltas.entrySet()) {
+                        adjustWithFloor(target, delta.getKey(), delta.getValue());
+                    }
+                }
+            }
+
+            for (ChannelDeparture departure : departures) {
+                deleteKey(target, key(CURRENT_CHANNEL_PREFIX + departure.getPlayerId()));
+                String lastGroup = departure.getLastGroup();
+                if (lastGroup != null && !lastGroup.isBlank()) {
+                    run(target, "set", (commands, client) ->
+                            commands.set(client, key(LAST_GROUP_PREFIX + departure.getPlayerId()), lastGroup));
+                }
+            }
+            return List.of();
+        }));
+    }
+
+    private <T> CompletableFuture<T> async(Supplier<T> call) {
+        return CompletableFuture.supplyAsync(call, executor);
+    }
+
+    @Override
+    public CompletableFuture<String> getLastGroupAsync(UUID playerId) {
+        return async(() -> getLastGroup(playerId));
+    }
+
+    @Override
+    public CompletableFuture<String> getCurrentChannelAsync(UUID playerId) {
+        return async(() -> getCurrentChannel(playerId));
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Integer>> getChannelCountsAsync(Collection<String> serverNames) {
+        return async(() -> getChannelCounts(serverNames));
+    }
+
+    @Override
+    public CompletableFuture<Void> recordTransferAsync(UUID playerId, String fromServer, String toServer,
+                                                       String currentChannel, String lastGroup) {
+        return CompletableFuture.runAsync(() -> recordTransfer(playerId, fromServer, toServer, currentChannel, lastGroup), executor);
+    }
+
+    @Override
+    public CompletableFuture<String> tryReserveSlotAsync(String serverName, int limit, long ttlMillis) {
+        return async(() -> tryReserveSlot(serverName, limit, ttlMillis));
+    }
+
+    @Override
+    public CompletableFuture<Void> releaseSlotAsync(String serverName, String token) {
+        return CompletableFuture.runAsync(() -> releaseSlot(serverName, token), executor);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
         try {
-            return Integer.parseInt(String.valueOf(result));
-        } catch (NumberFormatException ignored) {
-            return 0;
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warning("Timed out waiting for pending Redis writes to finish.");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        if (countMode == ChannelCountMode.LEASED) {
+            // Don't wait for the lease to expire, this proxy's players are gone now
+            withResource(jedis -> {
+                deleteKey(jedis, leaseKey(proxyId));
+                run(jedis, "srem", (commands, client) ->
+                        commands.srem(client, key(LEASE_SET_KEY), new String[]{proxyId}));
+                return null;
+            });
+        } else if (countMode == ChannelCountMode.SHARDED && !shardedServers.isEmpty()) {
+            // Drop this proxy's fields, its players are gone now
+            withResource(jedis -> pipelined(jedis, target -> {
+                for (String serverName : shardedServers) {
+                    run(target, "hdel", (commands, client) ->
+                            commands.hdel(client, shardKey(serverName), new String[]{proxyId}));
+                }
+                return List.of();
+            }));
         }
     }
 
     @Override
     public String getCurrentChannel(UUID playerId) {
-        Object result = withResource(jedis -> invoke(jedis, "get", new Class<?>[]{String.class},
-                key(CURRENT_CHANNEL_PREFIX + playerId)));
+        Object result = withResource(jedis -> run(jedis, "get", (commands, client) ->
+                commands.get(client, key(CURRENT_CHANNEL_PREFIX + playerId))));
         return result == null ? null : String.valueOf(result);
     }
 
@@ -183,8 +635,8 @@ public class ValioBungeeChannelStore implements ChannelStore {
             if (serverName == null || serverName.isBlank()) {
                 deleteKey(jedis, key(CURRENT_CHANNEL_PREFIX + playerId));
             } else {
-                invoke(jedis, "set", new Class<?>[]{String.class, String.class},
-                        key(CURRENT_CHANNEL_PREFIX + playerId), serverName);
+                run(jedis, "set", (commands, client) ->
+                        commands.set(client, key(CURRENT_CHANNEL_PREFIX + playerId), serverName));
             }
             return null;
         });
@@ -201,14 +653,10 @@ public class ValioBungeeChannelStore implements ChannelStore {
     @Override
     public void storeGroups(Iterable<String> groupNames) {
         withResource(jedis -> {
-            deleteKey(jedis, key(GROUP_SET_KEY));
-            if (groupNames != null) {
-                for (String groupName : groupNames) {
-                    if (groupName == null || groupName.isBlank()) continue;
-                    invoke(jedis, "sadd", new Class<?>[]{String.class, String[].class},
-                            key(GROUP_SET_KEY), new String[]{groupName});
-                }
-            }
+            pipelined(jedis, target -> {
+                writeGroups(target, groupNames);
+                return List.of();
+            });
             return null;
         });
     }
@@ -217,15 +665,10 @@ public class ValioBungeeChannelStore implements ChannelStore {
     public void storeGroupServers(String groupName, Iterable<String> servers) {
         if (groupName == null || groupName.isBlank()) return;
         withResource(jedis -> {
-            String listKey = key(GROUP_LIST_PREFIX + groupName);
-            deleteKey(jedis, listKey);
-            if (servers != null) {
-                for (String server : servers) {
-                    if (server == null || server.isBlank()) continue;
-                    invoke(jedis, "rpush", new Class<?>[]{String.class, String[].class},
-                            listKey, new String[]{server});
-                }
-            }
+            pipelined(jedis, target -> {
+                writeGroupServers(target, groupName, servers);
+                return List.of();
+            });
             return null;
         });
     }
@@ -234,10 +677,66 @@ public class ValioBungeeChannelStore implements ChannelStore {
     public void storeGroupMaxPlayers(String groupName, int maxPlayers) {
         if (groupName == null || groupName.isBlank()) return;
         withResource(jedis -> {
-            String metaKey = key(GROUP_LIST_PREFIX + groupName + GROUP_META_SUFFIX);
-            invoke(jedis, "hset", new Class<?>[]{String.class, String.class, String.class},
-                    metaKey, "max-player", String.valueOf(maxPlayers));
+            writeGroupMaxPlayers(jedis, groupName, maxPlayers);
             return null;
         });
     }
+
+    @Override
+    public void storeGroupLayout(Map<String, List<String>> groupServers, Map<String, Integer> groupMaxPlayers) {
+        if (countMode == ChannelCountMode.SHARDED) {
+            // Clear what a crashed run of this proxy left behind, also on servers it won't write to again
+            for (List<String> servers : groupServers.values()) {
+                for (String serverName : servers) {
+                    resetShard(serverName);
+                }
+            }
+        }
+
+        withResource(jedis -> {
+            pipelined(jedis, target -> {
+                writeGroups(target, groupServers.keySet());
+                for (Map.Entry<String, List<String>> entry : groupServers.entrySet()) {
+                    if (entry.getKey() == null || entry.getKey().isBlank()) continue;
+                    writeGroupServers(target, entry.getKey(), entry.getValue());
+                    writeGroupMaxPlayers(target, entry.getKey(), groupMaxPlayers.getOrDefault(entry.getKey(), 0));
+                }
+                return List.of();
+            });
+            return null;
+        });
+    }
+
+    private void writeGroups(Object target, Iterable<String> groupNames) {
+        deleteKey(target, key(GROUP_SET_KEY));
+        String[] members = nonBlank(groupNames);
+        if (members.length > 0) {
+            run(target, "sadd", (commands, client) -> commands.sadd(client, key(GROUP_SET_KEY), members));
+        }
+    }
+
+    private void writeGroupServers(Object target, String groupName, Iterable<String> servers) {
+        String listKey = key(GROUP_LIST_PREFIX + groupName);
+        deleteKey(target, listKey);
+        String[] members = nonBlank(servers);
+        if (members.length > 0) {
+            run(target, "rpush", (commands, client) -> commands.rpush(client, listKey, members));
+        }
+    }
+
+    private void writeGroupMaxPlayers(Object target, String groupName, int maxPlayers) {
+        String metaKey = key(GROUP_LIST_PREFIX + groupName + GROUP_META_SUFFIX);
+        run(target, "hset", (commands, client) ->
+                commands.hset(client, metaKey, "max-player", String.valueOf(maxPlayers)));
+    }
+
+    private static String[] nonBlank(Iterable<String> values) {
+        List<String> list = new ArrayList<>();
+        if (values != null) {
+            for (String value : values) {
+                if (value != null && !value.isBlank()) list.add(value);
+            }
+        }
+        return list.toArray(new String[0]);
+    }
 }
@@ -0,0 +1,61 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import com.imaginarycode.minecraft.redisbungee.AbstractRedisBungeeAPI;
+import com.imaginarycode.minecraft.redisbungee.events.PubSubMessageEvent;
+import com.velocitypowered.api.event.EventHandler;
+import com.velocitypowered.api.event.EventManager;
+
+import java.io.IOException;
+import java.util.function.Consumer;
+
+/**
+ * Consent changes sent as ValioBungee channel messages.
+ * ValioBungee resubscribes on its own and doesn't say when, so missed messages are only bounded by the cache's expiry.
+ */
+public class ValioBungeeConsentMessenger implements ConsentMessenger {
+    private final AbstractRedisBungeeAPI api;
+    private final EventManager eventManager;
+    private final Object plugin;
+    private final String channel;
+    private EventHandler<PubSubMessageEvent> handler;
+
+    /**
+     * @param eventManager The event manager channel messages arrive on
+     * @param plugin The plugin the listener is registered for
+     * @param channel The channel to send and receive on
+     */
+    public ValioBungeeConsentMessenger(EventManager eventManager, Object plugin, String channel) {
+        this.api = AbstractRedisBungeeAPI.getAbstractRedisBungeeAPI();
+        if (this.api == null) {
+            throw new IllegalStateException("ValioBungee API not available.");
+        }
+        this.eventManager = eventManager;
+        this.plugin = plugin;
+        this.channel = channel;
+    }
+
+    @Override
+    public void subscribe(Consumer<String> listener, Runnable onResubscribe) {
+        handler = event -> {
+            if (channel.equals(event.getChannel())) listener.accept(event.getMessage());
+        };
+        eventManager.register(plugin, PubSubMessageEvent.class, handler);
+        api.registerPubSubChannels(channel);
+    }
+
+    @Override
+    public void publish(String message) throws IOException {
+        try {
+            api.sendChannelMessage(channel, message);
+        } catch (RuntimeException e) {
+            throw new IOException(e.getMessage(), e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (handler == null) return;
+        api.unregisterPubSubChannels(channel);
+        eventManager.unregister(plugin, handler);
+    }
+}
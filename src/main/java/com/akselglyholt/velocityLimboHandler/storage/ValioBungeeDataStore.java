@@ -3,11 +3,14 @@ package com.akselglyholt.velocityLimboHandler.storage;
 import com.imaginarycode.minecraft.redisbungee.AbstractRedisBungeeAPI;
 import com.imaginarycode.minecraft.redisbungee.api.summoners.Summoner;
 
-import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.function.Function;
 import java.util.logging.Logger;
 
-public class ValioBungeeDataStore implements DataStore {
+public class ValioBungeeDataStore implements DataStore, ConsentStore {
     private static final String CONSENT_SET = "consent";
     private static final String LAST_GROUP_PREFIX = "player:last-group:";
     private static final String CHANNEL_COUNT_PREFIX = "channel:count:";
@@ -37,41 +40,83 @@ public class ValioBungeeDataStore implements DataStore {
         return summoner.obtainResource();
     }
 
-    private Object invoke(Object jedis, String method, Class<?>[] types, Object... args) {
+    // Consent is read on every login, so its resources go back to the pool instead of waiting to be collected
+    private Object withJedis(Function<Object, Object> fn) {
+        Object jedis = getJedis();
+        try {
+            return fn.apply(jedis);
+        } finally {
+            if (jedis instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    logger.warning("Failed to close Redis resource: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface RedisCall {
+        Object call(JedisCommands commands, Object client) throws Throwable;
+    }
+
+    // Run a command through the cached adapter of the client's class
+    private Object run(Object client, String command, RedisCall call) {
         try {
-            Method m = jedis.getClass().getMethod(method, types);
-            return m.invoke(jedis, args);
-        } catch (Exception e) {
-            logger.warning("ValioBungee Redis call failed (" + method + "): " + e.getMessage());
+            return call.call(JedisCommands.of(client), client);
+        } catch (Throwable e) {
+            logger.warning("ValioBungee Redis call failed (" + command + "): " + e.getMessage());
             return null;
         }
     }
 
     @Override
     public boolean hasConsent(UUID playerId) {
-        Object jedis = getJedis();
-        Object result = invoke(jedis, "sismember", new Class<?>[]{String.class, String.class},
-                key(CONSENT_SET), playerId.toString());
+        Object result = withJedis(jedis -> run(jedis, "sismember", (commands, client) ->
+                commands.sismember(client, key(CONSENT_SET), playerId.toString())));
         return result instanceof Boolean && (Boolean) result;
     }
 
     @Override
     public void setConsent(UUID playerId, boolean consented) {
-        Object jedis = getJedis();
-        if (consented) {
-            invoke(jedis, "sadd", new Class<?>[]{String.class, String[].class},
-                    key(CONSENT_SET), new String[]{playerId.toString()});
-        } else {
-            invoke(jedis, "srem", new Class<?>[]{String.class, String[].class},
-                    key(CONSENT_SET), new String[]{playerId.toString()});
+        withJedis(jedis -> {
+            if (consented) {
+                return run(jedis, "sadd", (commands, client) ->
+                        commands.sadd(client, key(CONSENT_SET), new String[]{playerId.toString()}));
+            }
+            return run(jedis, "srem", (commands, client) ->
+                    commands.srem(client, key(CONSENT_SET), new String[]{playerId.toString()}));
+        });
+    }
+
+    @Override
+    public void setConsents(Map<UUID, Boolean> changes) {
+        List<String> added = new ArrayList<>();
+        List<String> removed = new ArrayList<>();
+        for (Map.Entry<UUID, Boolean> change : changes.entrySet()) {
+            (change.getValue() ? added : removed).add(change.getKey().toString());
         }
+
+        // At most one SADD and one SREM for the whole batch
+        withJedis(jedis -> {
+            if (!added.isEmpty()) {
+                run(jedis, "sadd", (commands, client) ->
+                        commands.sadd(client, key(CONSENT_SET), added.toArray(new String[0])));
+            }
+            if (!removed.isEmpty()) {
+                run(jedis, "srem", (commands, client) ->
+                        commands.srem(client, key(CONSENT_SET), removed.toArray(new String[0])));
+            }
+            return null;
+        });
     }
 
     @Override
     public String getLastGroup(UUID playerId) {
         Object jedis = getJedis();
-        Object result = invoke(jedis, "get", new Class<?>[]{String.class},
-                key(LAST_GROUP_PREFIX + playerId));
+        Object result = run(jedis, "get", (commands, client) ->
+                commands.get(client, key(LAST_GROUP_PREFIX + playerId)));
         return result == null ? null : String.valueOf(result);
     }
 
@@ -79,24 +124,26 @@ public class ValioBungeeDataStore implements DataStore {
     public void setLastGroup(UUID playerId, String groupName) {
         Object jedis = getJedis();
         if (groupName == null || groupName.isBlank()) {
-            invoke(jedis, "del", new Class<?>[]{String[].class}, new String[]{key(LAST_GROUP_PREFIX + playerId)});
+            run(jedis, "del", (commands, client) ->
+                    commands.del(client, key(LAST_GROUP_PREFIX + playerId)));
         } else {
-            invoke(jedis, "set", new Class<?>[]{String.class, String.class},
-                    key(LAST_GROUP_PREFIX + playerId), groupName);
+            run(jedis, "set", (commands, client) ->
+                    commands.set(client, key(LAST_GROUP_PREFIX + playerId), groupName));
         }
     }
 
     @Override
     public void clearLastGroup(UUID playerId) {
         Object jedis = getJedis();
-        invoke(jedis, "del", new Class<?>[]{String[].class}, new String[]{key(LAST_GROUP_PREFIX + playerId)});
+        run(jedis, "del", (commands, client) ->
+                commands.del(client, key(LAST_GROUP_PREFIX + playerId)));
     }
 
     @Override
     public int incrementChannelCount(String serverName) {
         Object jedis = getJedis();
-        Object result = invoke(jedis, "incr", new Class<?>[]{String.class},
-                key(CHANNEL_COUNT_PREFIX + serverName));
+        Object result = run(jedis, "incr", (commands, client) ->
+                commands.incr(client, key(CHANNEL_COUNT_PREFIX + serverName)));
         if (result instanceof Number) {
             return ((Number) result).intValue();
         }
@@ -106,22 +153,17 @@ public class ValioBungeeDataStore implements DataStore {
     @Override
     public int decrementChannelCount(String serverName) {
         Object jedis = getJedis();
-        Object result = invoke(jedis, "decr", new Class<?>[]{String.class},
-                key(CHANNEL_COUNT_PREFIX + serverName));
-        int value = result instanceof Number ? ((Number) result).intValue() : 0;
-        if (value < 0) {
-            invoke(jedis, "set", new Class<?>[]{String.class, String.class},
-                    key(CHANNEL_COUNT_PREFIX + serverName), "0");
-            return 0;
-        }
-        return value;
+        // Decrement and clamp at 0 in one atomic step
+        Object result = run(jedis, "eval", (commands, client) -> commands.eval(client, RedisScripts.ADJUST_WITH_FLOOR,
+                List.of(key(CHANNEL_COUNT_PREFIX + serverName)), List.of("-1")));
+        return result instanceof Number number ? number.intValue() : 0;
     }
 
     @Override
     public int getChannelCount(String serverName) {
         Object jedis = getJedis();
-        Object result = invoke(jedis, "get", new Class<?>[]{String.class},
-                key(CHANNEL_COUNT_PREFIX + serverName));
+        Object result = run(jedis, "get", (commands, client) ->
+                commands.get(client, key(CHANNEL_COUNT_PREFIX + serverName)));
         if (result == null) return 0;
         try {
             return Integer.parseInt(String.valueOf(result));
@@ -129,4 +171,8 @@ public class ValioBungeeDataStore implements DataStore {
             return 0;
         }
     }
+
+    @Override
+    public void close() {
+    }
 }
@@ -0,0 +1,114 @@
+package com.akselglyholt.velocityLimboHandler.storage;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * Queues consent writes and commits them to another store in batches, in the background.
+ * A batch goes out once enough writes are pending or the flush interval has passed, whichever is first.
+ * Repeated writes for a player are merged, only the latest one is written.
+ * Pending writes are answered from the queue, so reads see them right away.
+ */
+public class WriteBehindConsentStore implements ConsentStore {
+    private final ConsentStore delegate;
+    private final Logger logger;
+    private final int batchSize;
+    private final Map<UUID, Boolean> pending = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+    private final Object flushLock = new Object();
+
+    /**
+     * @param delegate The store the batches are written to
+     * @param logger The logger failed batches are reported to
+     * @param batchSize How many pending writes trigger a flush before the interval is up
+     * @param flushIntervalMillis The longest a write stays pending
+     */
+    public WriteBehindConsentStore(ConsentStore delegate, Logger logger, int batchSize, long flushIntervalMillis) {
+        this.delegate = delegate;
+        this.logger = logger;
+        this.batchSize = Math.max(1, batchSize);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "VelocityLimboHandler consent writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long interval = Math.max(10, flushIntervalMillis);
+        executor.scheduleWithFixedDelay(this::flush, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean hasConsent(UUID playerId) {
+        Boolean queued = pending.get(playerId);
+        if (queued != null) return queued;
+        return delegate.hasConsent(playerId);
+    }
+
+    @Override
+    public void setConsent(UUID playerId, boolean consented) {
+        pending.put(playerId, consented);
+        if (pending.size() >= batchSize) requestFlush();
+    }
+
+    @Override
+    public void setConsents(Map<UUID, Boolean> changes) {
+        pending.putAll(changes);
+        if (pending.size() >= batchSize) requestFlush();
+    }
+
+    // Flush early on the writer thread, once the queue holds a full batch
+    private void requestFlush() {
+        try {
+            executor.execute(this::flush);
+        } catch (RejectedExecutionException e) {
+            // Closing, its final flush writes whatever is pending
+        }
+    }
+
+    /**
+     * Write everything pending as one batch
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            if (pending.isEmpty()) return;
+
+            Map<UUID, Boolean> batch = new HashMap<>(pending);
+            try {
+                delegate.setConsents(batch);
+            } catch (RuntimeException e) {
+                // Left pending, the next flush tries again
+                logger.warning("Failed to write " + batch.size() + " consent changes: " + e.getMessage());
+                return;
+            }
+
+            // Only drop what was written, a newer write for the same player stays queued
+            for (Map.Entry<UUID, Boolean> entry : batch.entrySet()) {
+                pending.remove(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+
+        // Whatever is still queued goes out before the store closes
+        flush();
+        delegate.close();
+    }
+}
@@ -0,0 +1,253 @@
+package com.akselglyholt.velocityLimboHandler.storage.redis;
+
+import com.akselglyholt.velocityLimboHandler.storage.RedisConfig;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * A small Redis client with a bounded connection pool.
+ * Arguments may be byte arrays, which are sent as they are, so keys and values are binary safe.
+ * Everything else is sent as UTF-8 text.
+ */
+public final class RespClient implements AutoCloseable {
+    private final RedisConfig config;
+    private final Logger logger;
+    private final LinkedBlockingDeque<RespConnection> idle = new LinkedBlockingDeque<>();
+    private final Semaphore permits;
+    private final Map<String, String> scriptHashes = new ConcurrentHashMap<>();
+    // The other way around, so a pipelined EVALSHA that Redis doesn't know can be sent again in full
+    private final Map<String, String> scriptsByHash = new ConcurrentHashMap<>();
+    private final List<RespSubscription> subscriptions = new ArrayList<>();
+    private volatile boolean closed;
+
+    public RespClient(RedisConfig config, Logger logger) {
+        this.config = config;
+        this.logger = logger;
+        this.permits = new Semaphore(config.getPoolSize());
+    }
+
+    /**
+     * Open a connection, to fail early if Redis can't be reached
+     */
+    public void connect() throws IOException {
+        RespConnection connection = borrow();
+        release(connection);
+    }
+
+    /**
+     * Run one command
+     * @param args The command and its arguments
+     * @return the reply, see {@link RespConnection}
+     * @throws RespException if Redis answered with an error
+     */
+    public Object call(Object... args) throws IOException {
+        RespConnection connection = borrow();
+        try {
+            return connection.call(args);
+        } finally {
+            release(connection);
+        }
+    }
+
+    /**
+     * Send several commands in one round trip
+     * @param commands The commands, each one an array of the command and its arguments
+     * @return the replies in order, error replies are returned as {@link RespException}s instead of thrown
+     */
+    public List<Object> pipeline(List<Object[]> commands) throws IOException {
+        List<Object> replies = new ArrayList<>(commands.size());
+        if (commands.isEmpty()) return replies;
+
+        RespConnection connection = borrow();
+        try {
+            for (Object[] command : commands) {
+                connection.write(command);
+            }
+            connection.flush();
+            List<Integer> uncached = new ArrayList<>();
+            for (int i = 0; i < commands.size(); i++) {
+                Object reply = connection.read();
+                if (isNoScript(reply) && "EVALSHA".equals(commands.get(i)[0])) uncached.add(i);
+                replies.add(reply);
+            }
+            if (uncached.isEmpty()) return replies;
+
+            // Redis didn't have these scripts cached yet, they run after the rest of the pipeline instead
+            for (int index : uncached) {
+                Object[] command = commands.get(index).clone();
+                command[0] = "EVAL";
+                command[1] = scriptsByHash.get(String.valueOf(command[1]));
+                connection.write(command);
+            }
+            connection.flush();
+            for (int index : uncached) {
+                replies.set(index, connection.read());
+            }
+            return replies;
+        } finally {
+            release(connection);
+        }
+    }
+
+    /**
+     * Run a Lua script, sending only its hash once Redis has it cached
+     * @param script The script source
+     * @param keys The keys the script touches
+     * @param args The other arguments
+     * @return the script's reply
+     */
+    public Object eval(String script, List<String> keys, List<String> args) throws IOException {
+        try {
+            return call(scriptCommand("EVALSHA", hash(script), keys, args));
+        } catch (RespException e) {
+            if (!isNoScript(e)) throw e;
+            // EVAL caches the script, so the next call can use the hash again
+            return call(scriptCommand("EVAL", script, keys, args));
+        }
+    }
+
+    /**
+     * A script command to queue on a pipeline. Only the script's hash is sent,
+     * {@link #pipeline(List)} sends the whole script again if Redis doesn't have it cached.
+     * Scripts resent that way run after the rest of the pipeline, so they shouldn't depend on its order.
+     * @return an EVALSHA command
+     */
+    public Object[] evalCommand(String script, List<String> keys, List<String> args) {
+        return scriptCommand("EVALSHA", hash(script), keys, args);
+    }
+
+    private String hash(String script) {
+        String sha = scriptHashes.computeIfAbsent(script, RespClient::sha1);
+        scriptsByHash.putIfAbsent(sha, script);
+        return sha;
+    }
+
+    private static boolean isNoScript(Object reply) {
+        return reply instanceof RespException error && error.getMessage() != null && error.getMessage().startsWith("NOSCRIPT");
+    }
+
+    public long publish(String channel, String message) throws IOException {
+        Object reply = call("PUBLISH", channel, message);
+        return reply instanceof Long count ? count : 0;
+    }
+
+    /**
+     * Listen to channels on a connection of its own, outside the pool.
+     * The subscription reconnects and subscribes again if the connection drops.
+     * @param listener Called with the channel and the payload of every message, on the subscription's thread
+     * @param channels The channels to listen to
+     * @return the subscription, close it to stop listening
+     */
+    public RespSubscription subscribe(BiConsumer<String, byte[]> listener, String... channels) {
+        return subscribe(listener, null, channels);
+    }
+
+    /**
+     * Listen to channels, and find out when messages may have been missed
+     * @param listener Called with the channel and the payload of every message, on the subscription's thread
+     * @param onResubscribe Called after the subscription reconnected, messages sent while it was down are lost
+     * @param channels The channels to listen to
+     * @return the subscription, close it to stop listening
+     */
+    public RespSubscription subscribe(BiConsumer<String, byte[]> listener, Runnable onResubscribe, String... channels) {
+        RespSubscription subscription = new RespSubscription(config, logger, listener, onResubscribe,
+                RespSubscription.KEEPALIVE_MILLIS, channels);
+        synchronized (subscriptions) {
+            subscriptions.add(subscription);
+        }
+        subscription.start();
+        return subscription;
+    }
+
+    /**
+     * @param reply A bulk string reply
+     * @return the reply as UTF-8 text, or null
+     */
+    public static String string(Object reply) {
+        if (reply == null) return null;
+        if (reply instanceof byte[] bytes) return new String(bytes, StandardCharsets.UTF_8);
+        return String.valueOf(reply);
+    }
+
+    private RespConnection borrow() throws IOException {
+        if (closed) throw new IOException("Redis client is closed");
+        try {
+            if (!permits.tryAcquire(config.getTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                throw new IOException("Timed out waiting for a Redis connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for a Redis connection", e);
+        }
+
+        RespConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            if (!connection.isBroken()) return connection;
+            connection.close();
+        }
+        try {
+            return new RespConnection(config);
+        } catch (IOException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private void release(RespConnection connection) {
+        // A connection that failed mid reply can't be trusted to be in sync anymore
+        if (closed || connection.isBroken()) {
+            connection.close();
+        } else {
+            idle.offerFirst(connection);
+        }
+        permits.release();
+    }
+
+    private static Object[] scriptCommand(String command, String script, List<String> keys, List<String> args) {
+        Object[] parts = new Object[3 + keys.size() + args.size()];
+        parts[0] = command;
+        parts[1] = script;
+        parts[2] = keys.size();
+        int index = 3;
+        for (String key : keys) parts[index++] = key;
+        for (String arg : args) parts[index++] = arg;
+        return parts;
+    }
+
+    private static String sha1(String script) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-1 not available", e);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (subscriptions) {
+            for (RespSubscription subscription : subscriptions) {
+                subscription.close();
+            }
+            subscriptions.clear();
+        }
+        RespConnection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            connection.close();
+        }
+    }
+}
@@ -0,0 +1,206 @@
+package com.akselglyholt.velocityLimboHandler.storage.redis;
+
+import com.akselglyholt.velocityLimboHandler.storage.RedisConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A single connection speaking RESP2.
+ * Replies are decoded as: simple strings to String, integers to Long, bulk strings to byte[],
+ * arrays to List and errors to {@link RespException}. Null bulk strings and arrays are null.
+ * Not thread safe, the pool hands every connection to one caller at a time.
+ */
+final class RespConnection implements AutoCloseable {
+    private static final byte[] CRLF = {'\r', '\n'};
+    // Returned by readWithin when no reply started in time
+    static final Object NO_REPLY = new Object();
+
+    private final Socket socket;
+    private final OutputStream out;
+    private final InputStream in;
+    private boolean broken;
+
+    RespConnection(RedisConfig config) throws IOException {
+        this.socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(config.getHost(), config.getPort()), config.getTimeoutMillis());
+            socket.setSoTimeout(config.getTimeoutMillis());
+            socket.setTcpNoDelay(true);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), 8192);
+            this.in = new BufferedInputStream(socket.getInputStream(), 8192);
+
+            if (!config.getPassword().isEmpty()) call("AUTH", config.getPassword());
+            if (config.getDatabase() != 0) call("SELECT", config.getDatabase());
+        } catch (IOException | RespException e) {
+            socket.close();
+            throw e instanceof IOException io ? io : new IOException(e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Send one command and wait for its reply
+     * @param args The command and its arguments
+     * @return the reply
+     * @throws RespException if the server answered with an error
+     */
+    Object call(Object... args) throws IOException {
+        write(args);
+        flush();
+        Object reply = read();
+        if (reply instanceof RespException error) throw error;
+        return reply;
+    }
+
+    /**
+     * Buffer a command without sending it
+     * @param args The command and its arguments, byte arrays are sent as they are, anything else as UTF-8 text
+     */
+    void write(Object... args) throws IOException {
+        try {
+            out.write('*');
+            writeNumber(args.length);
+            for (Object arg : args) {
+                byte[] bytes = encode(arg);
+                out.write('$');
+                writeNumber(bytes.length);
+                out.write(bytes);
+                out.write(CRLF);
+            }
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    void flush() throws IOException {
+        try {
+            out.flush();
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Read the next reply, error replies are returned rather than thrown
+     */
+    Object read() throws IOException {
+        try {
+            return readReply();
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Wait a limited time for the next reply to start, so subscribers notice a connection that died silently.
+     * A reply that started is read in full, running out of time halfway through breaks the connection.
+     * @param millis How long to wait for the reply to start
+     * @return the reply, or {@link #NO_REPLY} if none started in time
+     */
+    Object readWithin(int millis) throws IOException {
+        try {
+            socket.setSoTimeout(millis);
+            int type;
+            try {
+                type = in.read();
+            } catch (SocketTimeoutException e) {
+                return NO_REPLY;
+            }
+            return readReply(type);
+        } catch (IOException e) {
+            broken = true;
+            throw e;
+        }
+    }
+
+    boolean isBroken() {
+        return broken || socket.isClosed();
+    }
+
+    private Object readReply() throws IOException {
+        return readReply(in.read());
+    }
+
+    private Object readReply(int type) throws IOException {
+        if (type == -1) throw new EOFException("Connection closed by Redis");
+
+        String line = readLine();
+        switch (type) {
+            case '+':
+                return line;
+            case '-':
+                return new RespException(line);
+            case ':':
+                return Long.parseLong(line);
+            case '$': {
+                int length = Integer.parseInt(line);
+                if (length < 0) return null;
+                byte[] data = in.readNBytes(length);
+                if (data.length < length) throw new EOFException("Connection closed by Redis");
+                readLine();
+                return data;
+            }
+            case '*': {
+                int count = Integer.parseInt(line);
+                if (count < 0) return null;
+                List<Object> items = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    items.add(readReply());
+                }
+                return items;
+            }
+            default:
+                throw new IOException("Unknown RESP reply type: " + (char) type);
+        }
+    }
+
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(16);
+        int current;
+        while ((current = in.read()) != -1) {
+            if (current == '\r') {
+                int next = in.read();
+                if (next == '\n') return line.toString(StandardCharsets.UTF_8);
+                line.write(current);
+                if (next == -1) break;
+                line.write(next);
+                continue;
+            }
+            line.write(current);
+        }
+        throw new EOFException("Connection closed by Redis");
+    }
+
+    private void writeNumber(long value) throws IOException {
+        out.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+        out.write(CRLF);
+    }
+
+    private static byte[] encode(Object arg) {
+        if (arg instanceof byte[] bytes) return bytes;
+        return String.valueOf(arg).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        broken = true;
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
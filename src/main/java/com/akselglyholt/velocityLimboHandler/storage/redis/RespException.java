@@ -0,0 +1,10 @@
+package com.akselglyholt.velocityLimboHandler.storage.redis;
+
+/**
+ * An error reply sent by the Redis server
+ */
+public class RespException extends RuntimeException {
+    public RespException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,111 @@
+package com.akselglyholt.velocityLimboHandler.storage.redis;
+
+import com.akselglyholt.velocityLimboHandler.storage.RedisConfig;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.logging.Logger;
+
+/**
+ * A pub/sub subscription on a dedicated connection, read by a daemon thread
+ */
+public final class RespSubscription implements AutoCloseable {
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+    // A quiet connection is pinged after this long, and given up on if the ping isn't answered within it either.
+    // Without it a connection dropped by a failover or a NAT would be waited on forever.
+    static final int KEEPALIVE_MILLIS = 15000;
+
+    private final RedisConfig config;
+    private final Logger logger;
+    private final BiConsumer<String, byte[]> listener;
+    private final Runnable onResubscribe;
+    private final String[] channels;
+    private final int keepaliveMillis;
+    private final Thread thread;
+    private volatile RespConnection connection;
+    private volatile boolean closed;
+
+    RespSubscription(RedisConfig config, Logger logger, BiConsumer<String, byte[]> listener,
+                     Runnable onResubscribe, int keepaliveMillis, String[] channels) {
+        this.config = config;
+        this.logger = logger;
+        this.listener = listener;
+        this.onResubscribe = onResubscribe;
+        this.channels = channels.clone();
+        this.keepaliveMillis = Math.max(1, keepaliveMillis);
+        this.thread = new Thread(this::listen, "VelocityLimboHandler Redis subscriber");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    private void listen() {
+        boolean subscribedBefore = false;
+        while (!closed) {
+            try (RespConnection current = new RespConnection(config)) {
+                connection = current;
+                Object[] command = new Object[channels.length + 1];
+                command[0] = "SUBSCRIBE";
+                System.arraycopy(channels, 0, command, 1, channels.length);
+                current.write(command);
+                current.flush();
+
+                if (subscribedBefore && onResubscribe != null) {
+                    try {
+                        onResubscribe.run();
+                    } catch (RuntimeException e) {
+                        logger.warning("Redis resubscribe listener failed: " + e.getMessage());
+                    }
+                }
+                subscribedBefore = true;
+
+                boolean pinged = false;
+                while (!closed) {
+                    Object reply = current.readWithin(keepaliveMillis);
+                    if (reply == RespConnection.NO_REPLY) {
+                        if (pinged) throw new IOException("Redis didn't answer the keepalive ping");
+                        current.write("PING");
+                        current.flush();
+                        pinged = true;
+                        continue;
+                    }
+                    pinged = false;
+
+                    // Subscribe confirmations are arrays too, only messages carry a payload
+                    if (reply instanceof List<?> parts && parts.size() == 3
+                            && "message".equals(RespClient.string(parts.get(0)))) {
+                        dispatch(RespClient.string(parts.get(1)), parts.get(2));
+                    }
+                }
+            } catch (IOException e) {
+                if (closed) return;
+                logger.warning("Redis subscription lost, reconnecting: " + e.getMessage());
+                try {
+                    Thread.sleep(RECONNECT_DELAY_MILLIS);
+                } catch (InterruptedException interrupted) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void dispatch(String channel, Object payload) {
+        try {
+            listener.accept(channel, payload instanceof byte[] bytes ? bytes : new byte[0]);
+        } catch (RuntimeException e) {
+            logger.warning("Redis subscription listener failed: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        RespConnection current = connection;
+        // Unblocks the reader thread
+        if (current != null) current.close();
+        thread.interrupt();
+    }
+}
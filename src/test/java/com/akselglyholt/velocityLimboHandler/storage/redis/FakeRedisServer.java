@@ -0,0 +1,250 @@
+package com.akselglyholt.velocityLimboHandler.storage.redis;
+
+import com.akselglyholt.velocityLimboHandler.storage.RedisConfig;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An in-process stand-in for a Redis server, speaking just enough RESP2 for the client's tests.
+ * Knows GET, SET, INCR, PING, PUBLISH, SUBSCRIBE, EVAL and EVALSHA. Scripts aren't run,
+ * they answer with the number of keys they were given, and EVALSHA only knows scripts sent with EVAL before.
+ * Canned replies can be set for any other command, to feed the client raw RESP.
+ */
+final class FakeRedisServer implements AutoCloseable {
+    private final ServerSocket serverSocket;
+    private final Thread acceptor;
+    private final Map<String, byte[]> values = new ConcurrentHashMap<>();
+    private final Map<String, String> cannedReplies = new ConcurrentHashMap<>();
+    private final Set<String> knownScripts = ConcurrentHashMap.newKeySet();
+    private final Map<String, List<Client>> subscribers = new ConcurrentHashMap<>();
+    private final List<Client> clients = new CopyOnWriteArrayList<>();
+    private final List<String> received = new CopyOnWriteArrayList<>();
+    private volatile boolean silent;
+
+    FakeRedisServer() throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.acceptor = new Thread(this::accept, "Fake Redis acceptor");
+        this.acceptor.setDaemon(true);
+        this.acceptor.start();
+    }
+
+    RedisConfig config() {
+        return new RedisConfig("127.0.0.1", serverSocket.getLocalPort(), "", 0, 2, 1000);
+    }
+
+    // Answer the command with these raw bytes from now on
+    void reply(String command, String raw) {
+        cannedReplies.put(command.toUpperCase(), raw);
+    }
+
+    // Stop answering anything while keeping the connections open, like a peer that vanished without a reset
+    void setSilent(boolean silent) {
+        this.silent = silent;
+    }
+
+    // Drop the connections of every subscriber, the pooled ones stay up
+    void disconnectSubscribers() {
+        for (Client client : clients) {
+            if (client.isSubscriber()) client.close();
+        }
+    }
+
+    // The name of every command received so far, in order
+    List<String> received() {
+        return received;
+    }
+
+    int subscriberCount(String channel) {
+        return subscribers.getOrDefault(channel, List.of()).size();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Client client = new Client(serverSocket.accept());
+                clients.add(client);
+                Thread thread = new Thread(client::serve, "Fake Redis connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private final class Client {
+        private final Socket socket;
+        private OutputStream out;
+
+        Client(Socket socket) {
+            this.socket = socket;
+        }
+
+        void serve() {
+            try (socket) {
+                InputStream in = new BufferedInputStream(socket.getInputStream());
+                out = socket.getOutputStream();
+                List<byte[]> command;
+                while ((command = readCommand(in)) != null) {
+                    String name = text(command.get(0)).toUpperCase();
+                    received.add(name);
+                    if (silent) continue;
+                    handle(name, command);
+                }
+            } catch (IOException ignored) {
+            } finally {
+                clients.remove(this);
+                for (List<Client> channel : subscribers.values()) {
+                    channel.remove(this);
+                }
+            }
+        }
+
+        private void handle(String name, List<byte[]> command) throws IOException {
+            String canned = cannedReplies.get(name);
+            if (canned != null) {
+                send(canned);
+                return;
+            }
+
+            switch (name) {
+                case "PING" -> send(isSubscriber() ? array(bulk("pong"), bulk("")) : "+PONG\r\n");
+                case "GET" -> send(bulk(values.get(text(command.get(1)))));
+                case "SET" -> {
+                    values.put(text(command.get(1)), command.get(2));
+                    send("+OK\r\n");
+                }
+                case "INCR" -> {
+                    long value = values.containsKey(text(command.get(1))) ? Long.parseLong(text(values.get(text(command.get(1))))) + 1 : 1;
+                    values.put(text(command.get(1)), String.valueOf(value).getBytes(StandardCharsets.UTF_8));
+                    send(":" + value + "\r\n");
+                }
+                case "EVAL" -> {
+                    knownScripts.add(sha1(text(command.get(1))));
+                    send(":" + text(command.get(2)) + "\r\n");
+                }
+                case "EVALSHA" -> {
+                    if (!knownScripts.contains(text(command.get(1)))) {
+                        send("-NOSCRIPT No matching script. Please use EVAL.\r\n");
+                    } else {
+                        send(":" + text(command.get(2)) + "\r\n");
+                    }
+                }
+                case "SUBSCRIBE" -> {
+                    for (int i = 1; i < command.size(); i++) {
+                        String channel = text(command.get(i));
+                        subscribers.computeIfAbsent(channel, ignored -> new CopyOnWriteArrayList<>()).add(this);
+                        send(array(bulk("subscribe"), bulk(channel), ":" + i + "\r\n"));
+                    }
+                }
+                case "PUBLISH" -> {
+                    String channel = text(command.get(1));
+                    List<Client> receivers = subscribers.getOrDefault(channel, List.of());
+                    for (Client receiver : receivers) {
+                        receiver.send(array(bulk("message"), bulk(channel), bulk(text(command.get(2)))));
+                    }
+                    send(":" + receivers.size() + "\r\n");
+                }
+                default -> send("-ERR unknown command '" + name + "'\r\n");
+            }
+        }
+
+        private boolean isSubscriber() {
+            for (List<Client> channel : subscribers.values()) {
+                if (channel.contains(this)) return true;
+            }
+            return false;
+        }
+
+        synchronized void send(String raw) throws IOException {
+            out.write(raw.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private static List<byte[]> readCommand(InputStream in) throws IOException {
+        String header = readLine(in);
+        if (header == null) return null;
+        if (!header.startsWith("*")) throw new IOException("Expected an array, got " + header);
+
+        int count = Integer.parseInt(header.substring(1));
+        List<byte[]> parts = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String length = readLine(in);
+            if (length == null || !length.startsWith("$")) throw new IOException("Expected a bulk string, got " + length);
+            byte[] data = in.readNBytes(Integer.parseInt(length.substring(1)));
+            readLine(in);
+            parts.add(data);
+        }
+        return parts;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int current;
+        while ((current = in.read()) != -1) {
+            if (current == '\r') {
+                in.read();
+                return line.toString(StandardCharsets.UTF_8);
+            }
+            line.write(current);
+        }
+        return null;
+    }
+
+    private static String bulk(byte[] value) {
+        return value == null ? "$-1\r\n" : bulk(text(value));
+    }
+
+    private static String bulk(String value) {
+        return "$" + value.getBytes(StandardCharsets.UTF_8).length + "\r\n" + value + "\r\n";
+    }
+
+    private static String array(String... items) {
+        return "*" + items.length + "\r\n" + String.join("", items);
+    }
+
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    static String sha1(String script) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(script.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Client client : clients) {
+            client.close();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.akselglyholt.velocityLimboHandler.storage.redis;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RespClientTest {
+    private static final Logger LOGGER = Logger.getLogger("RespClientTest");
+    private static final String SCRIPT = "return #KEYS";
+
+    private FakeRedisServer server;
+    private RespClient client;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new FakeRedisServer();
+        client = new RespClient(server.config(), LOGGER);
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        client.close();
+        server.close();
+    }
+
+    @Test
+    void decodesBulkStrings() throws Exception {
+        server.reply("FETCH", "$7\r\nva\r\nlue\r\n");
+
+        assertArrayEquals("va\r\nlue".getBytes(StandardCharsets.UTF_8), (byte[]) client.call("FETCH"));
+    }
+
+    @Test
+    void decodesNullBulkStrings() throws Exception {
+        server.reply("FETCH", "$-1\r\n");
+
+        assertNull(client.call("FETCH"));
+    }
+
+    @Test
+    void decodesNestedArrays() throws Exception {
+        server.reply("FETCH", "*4\r\n+OK\r\n:42\r\n*1\r\n$1\r\na\r\n*-1\r\n");
+
+        List<?> reply = assertInstanceOf(List.class, client.call("FETCH"));
+        assertEquals(4, reply.size());
+        assertEquals("OK", reply.get(0));
+        assertEquals(42L, reply.get(1));
+        assertEquals("a", RespClient.string(((List<?>) reply.get(2)).get(0)));
+        assertNull(reply.get(3));
+    }
+
+    @Test
+    void throwsErrorReplies() throws Exception {
+        server.reply("FETCH", "-ERR something broke\r\n");
+
+        RespException error = assertThrows(RespException.class, () -> client.call("FETCH"));
+        assertEquals("ERR something broke", error.getMessage());
+        // The connection is still in sync afterwards
+        assertEquals("PONG", client.call("PING"));
+    }
+
+    @Test
+    void pipelinesRepliesInOrder() throws Exception {
+        List<Object[]> commands = new ArrayList<>();
+        commands.add(new Object[]{"SET", "counter", "41"});
+        commands.add(new Object[]{"INCR", "counter"});
+        commands.add(new Object[]{"NOPE"});
+        commands.add(new Object[]{"GET", "counter"});
+
+        List<Object> replies = client.pipeline(commands);
+
+        assertEquals(4, replies.size());
+        assertEquals("OK", replies.get(0));
+        assertEquals(42L, replies.get(1));
+        assertInstanceOf(RespException.class, replies.get(2));
+        assertEquals("42", RespClient.string(replies.get(3)));
+    }
+
+    @Test
+    void evalFallsBackToTheFullScriptOnce() throws Exception {
+        assertEquals(2L, client.eval(SCRIPT, List.of("a", "b"), List.of()));
+        assertEquals(List.of("EVALSHA", "EVAL"), server.received());
+
+        assertEquals(1L, client.eval(SCRIPT, List.of("a"), List.of("x")));
+        assertEquals(List.of("EVALSHA", "EVAL", "EVALSHA"), server.received());
+    }
+
+    @Test
+    void pipelineResendsUncachedScripts() throws Exception {
+        List<Object[]> commands = new ArrayList<>();
+        commands.add(client.evalCommand(SCRIPT, List.of("a", "b", "c"), List.of()));
+        commands.add(new Object[]{"GET", "missing"});
+
+        List<Object> replies = client.pipeline(commands);
+
+        assertEquals(3L, replies.get(0));
+        assertNull(replies.get(1));
+        assertEquals(List.of("EVALSHA", "GET", "EVAL"), server.received());
+
+        assertEquals(List.of(1L), client.pipeline(List.<Object[]>of(client.evalCommand(SCRIPT, List.of("a"), List.of()))));
+        assertEquals("EVALSHA", server.received().get(server.received().size() - 1));
+    }
+
+    @Test
+    void resubscribesAfterTheConnectionDrops() throws Exception {
+        LinkedBlockingQueue<String> messages = new LinkedBlockingQueue<>();
+        CountDownLatch resubscribed = new CountDownLatch(1);
+        client.subscribe((channel, payload) -> messages.add(channel + ":" + new String(payload, StandardCharsets.UTF_8)),
+                resubscribed::countDown, "events");
+        awaitSubscriber("events");
+
+        client.publish("events", "first");
+        assertEquals("events:first", messages.poll(5, TimeUnit.SECONDS));
+
+        server.disconnectSubscribers();
+        assertTrue(resubscribed.await(5, TimeUnit.SECONDS));
+        awaitSubscriber("events");
+
+        client.publish("events", "second");
+        assertEquals("events:second", messages.poll(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void reconnectsWhenThePingGoesUnanswered() throws Exception {
+        CountDownLatch resubscribed = new CountDownLatch(1);
+        RespSubscription subscription = new RespSubscription(server.config(), LOGGER, (channel, payload) -> {},
+                resubscribed::countDown, 100, new String[]{"events"});
+        try {
+            subscription.start();
+            awaitSubscriber("events");
+
+            server.setSilent(true);
+            assertTrue(resubscribed.await(5, TimeUnit.SECONDS));
+            assertTrue(server.received().contains("PING"));
+        } finally {
+            subscription.close();
+        }
+    }
+
+    private void awaitSubscriber(String channel) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (server.subscriberCount(channel) == 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "Nobody subscribed to " + channel);
+            Thread.sleep(10);
+        }
+    }
+}